@@ -0,0 +1,440 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Saves a game in the background while it goes on being played.
+ *
+ * An autosave only takes a snapshot on the game thread, which costs time in the number of rooms changed since the
+ * last one rather than in the size of the world, and leaves the writing to a background thread. The first save of a
+ * chain is a full base file; the ones after it are deltas holding only the rooms whose generation or cell changed
+ * since the save before, found by walking the parts of the two versions of the map that are not shared, plus the
+ * player if its generation moved. Once a chain holds as many deltas as allowed, the next save compacts it by
+ * writing a new base, and chains older than the ones kept are deleted.
+ *
+ * Layout of a save file, all numbers big endian:
+ * <pre>
+ * header   int magic "QRTS", int version, byte kind (base, delta), int chain, int index, long root id
+ * rooms    int count, then long id, int x, int y, room (as in WorldFile) per changed room
+ * removed  int count, long id * count
+ * player   byte state (unchanged, none, present), [string name, int max items, byte has bag, [item bag], long room id]
+ * </pre>
+ * Files are written aside and moved into place once forced to disk, so a crash never leaves half a save behind.
+ */
+public class AutosaveService implements Closeable {
+    private static final int MAGIC = 0x51525453; // "QRTS"
+    private static final int VERSION = 1;
+
+    private static final byte BASE = 1;
+    private static final byte DELTA = 2;
+
+    private static final byte PLAYER_UNCHANGED = 0;
+    private static final byte NO_PLAYER = 1;
+    private static final byte PLAYER = 2;
+
+    private static final Pattern FILE_NAME = Pattern.compile("autosave-(\\d+)(?:-(\\d+))?\\.(base|delta)");
+
+    private final Path directory;
+    private final int chainLength;
+    private final int keptChains;
+    private final ExecutorService writer;
+
+    // Only touched by the writer thread
+    private PersistentLongMap<RoomState> written; // Rooms as of the last save, null before the first base
+    private long writtenPlayerGeneration;
+    private int chain; // Number of the chain being written
+    private int index; // Number of the last file of the chain, 0 for its base
+
+    /**
+     * Creates a service saving into a directory, starting a new chain after any the directory already holds.
+     *
+     * @param directory   The directory of the save files, created if needed.
+     * @param chainLength The number of deltas written after a base before the chain is compacted.
+     * @param keptChains  The number of chains kept on disk, at least 1.
+     * @throws IOException if the directory cannot be read or created.
+     */
+    public AutosaveService(Path directory, int chainLength, int keptChains) throws IOException {
+        if (chainLength < 0 || keptChains < 1) {
+            throw new IllegalArgumentException("A chain holds at least a base and at least one chain is kept.");
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.chainLength = chainLength;
+        this.keptChains = keptChains;
+        this.written = null;
+        this.writtenPlayerGeneration = 0;
+        this.chain = 0;
+        for (int existing : chains(directory)) {
+            this.chain = Math.max(this.chain, existing);
+        }
+        this.index = 0;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "autosave-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Saves the game as it is now. Only the snapshot is taken on the calling thread, the file is written in the
+     * background, and the game can be changed as soon as the call returns.
+     *
+     * @param game The game to save.
+     * Returns A future holding the report of the save, or failing with the IOException that stopped it.
+     */
+    public Future<Report> autosave(GameManager game) {
+        long start = System.nanoTime();
+        WorldSnapshot snapshot = game.snapshot();
+        long pause = System.nanoTime() - start;
+        return this.writer.submit(() -> write(snapshot, pause));
+    }
+
+    /**
+     * Writes a save of the snapshot, a base or a delta on the last save.
+     */
+    private Report write(WorldSnapshot snapshot, long pause) throws IOException {
+        long start = System.nanoTime();
+        boolean full = this.written == null || this.index >= this.chainLength;
+        int fileChain = full ? this.chain + 1 : this.chain;
+        int fileIndex = full ? 0 : this.index + 1;
+        Path file = this.directory.resolve(full ? String.format("autosave-%06d.base", fileChain)
+                : String.format("autosave-%06d-%04d.delta", fileChain, fileIndex));
+        Path aside = file.resolveSibling(file.getFileName() + ".tmp");
+
+        List<RoomState> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        if (full) {
+            snapshot.getRooms().forEachValue(changed::add);
+        } else {
+            snapshot.getRooms().forEachDifference(this.written, (id, before, after) -> {
+                if (after == null) {
+                    removed.add(id);
+                } else if (before == null || before.getGeneration() != after.getGeneration()
+                        || before.getX() != after.getX() || before.getY() != after.getY()) {
+                    changed.add(after);
+                }
+                // Otherwise only the links of the room changed, which follow from the cells
+            });
+        }
+        boolean playerChanged = full || snapshot.getPlayerGeneration() != this.writtenPlayerGeneration;
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(aside), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(full ? BASE : DELTA);
+                out.writeInt(fileChain);
+                out.writeInt(fileIndex);
+                out.writeLong(snapshot.getRootId());
+                out.writeInt(changed.size());
+                for (RoomState state : changed) {
+                    out.writeLong(state.getId());
+                    out.writeInt(state.getX());
+                    out.writeInt(state.getY());
+                    WorldFile.writeRoom(out, state.toRoom());
+                }
+                out.writeInt(removed.size());
+                for (long id : removed) {
+                    out.writeLong(id);
+                }
+                writePlayer(out, playerChanged ? snapshot.toPlayer() : null, playerChanged, snapshot.getPlayerRoomId());
+            }
+            try (FileChannel channel = FileChannel.open(aside, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(aside, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(aside);
+        }
+
+        this.written = snapshot.getRooms();
+        this.writtenPlayerGeneration = snapshot.getPlayerGeneration();
+        this.chain = fileChain;
+        this.index = fileIndex;
+        if (full) {
+            deleteOldChains();
+        }
+        return new Report(file, full, changed.size(), removed.size(), Files.size(file), pause, System.nanoTime() - start);
+    }
+
+    private static void writePlayer(DataOutputStream out, Player player, boolean changed, long roomId) throws IOException {
+        if (!changed) {
+            out.writeByte(PLAYER_UNCHANGED);
+        } else if (player == null) {
+            out.writeByte(NO_PLAYER);
+        } else {
+            out.writeByte(PLAYER);
+            WorldFile.writeString(out, player.getName());
+            out.writeInt(player.getMaxItems());
+            out.writeBoolean(player.getBag() != null);
+            if (player.getBag() != null) {
+                WorldFile.writeItem(out, player.getBag());
+            }
+            out.writeLong(roomId);
+        }
+    }
+
+    /**
+     * Deletes every chain but the ones kept, the newest base being written already.
+     */
+    private void deleteOldChains() throws IOException {
+        int oldestKept = this.chain - this.keptChains + 1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) < oldestKept) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the saves already asked for and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        this.writer.shutdown();
+        try {
+            this.writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads the latest save of a directory: the newest readable base and every delta of its chain that follows it,
+     * without printing anything. A chain whose base is damaged is passed over for the one before it, and a damaged
+     * delta ends its chain.
+     *
+     * @param directory The directory of the save files.
+     * Returns The loaded game, an empty one if the directory holds no save.
+     * @throws IOException if a file cannot be read.
+     */
+    public static GameManager load(Path directory) throws IOException {
+        List<Integer> chains = chains(directory);
+        chains.sort(null);
+        for (int i = chains.size() - 1; i >= 0; i--) {
+            int number = chains.get(i);
+            Save save = new Save();
+            try {
+                read(directory.resolve(String.format("autosave-%06d.base", number)), save, BASE);
+            } catch (InvalidWorldFile e) {
+                continue;
+            }
+            for (int delta = 1; ; delta++) {
+                Path file = directory.resolve(String.format("autosave-%06d-%04d.delta", number, delta));
+                if (!Files.exists(file)) {
+                    break;
+                }
+                try {
+                    read(file, save, DELTA);
+                } catch (InvalidWorldFile e) {
+                    break;
+                }
+            }
+            return save.toGame();
+        }
+        return new GameManager();
+    }
+
+    /**
+     * Applies a save file onto what the files before it restored. A file that cannot be read leaves it unchanged.
+     */
+    private static void read(Path file, Save save, byte kind) throws IOException {
+        Map<Long, SavedRoom> rooms = new LinkedHashMap<>();
+        List<Long> removed = new ArrayList<>();
+        long rootId;
+        byte playerState;
+        Player player = null;
+        long playerRoomId = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.get() != kind) {
+                throw new InvalidWorldFile(file + " is not an autosave of the expected kind.");
+            }
+            buffer.getInt();
+            buffer.getInt();
+            rootId = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                rooms.put(id, new SavedRoom(WorldFile.readRoom(buffer), x, y));
+            }
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                removed.add(buffer.getLong());
+            }
+            playerState = buffer.get();
+            if (playerState == PLAYER) {
+                player = new Player(WorldFile.readString(buffer), buffer.getInt());
+                player.setBag(buffer.get() != 0 ? (Bag) WorldFile.readItem(buffer) : null);
+                playerRoomId = buffer.getLong();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                 | NegativeArraySizeException | ClassCastException e) {
+            throw new InvalidWorldFile("The autosave " + file + " is truncated or damaged.", e);
+        }
+        save.rootId = rootId;
+        for (long id : removed) {
+            save.rooms.remove(id);
+        }
+        save.rooms.putAll(rooms);
+        if (playerState != PLAYER_UNCHANGED) {
+            save.player = player;
+            save.playerRoomId = playerRoomId;
+        }
+    }
+
+    /**
+     * Lists the chain numbers of the save files of a directory.
+     */
+    private static List<Integer> chains(Path directory) throws IOException {
+        List<Integer> chains = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return chains;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "autosave-*.base")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    chains.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return chains;
+    }
+
+    /**
+     * The game restored so far while a chain is read.
+     */
+    private static final class Save {
+        private final Map<Long, SavedRoom> rooms = new LinkedHashMap<>();
+        private long rootId;
+        private Player player;
+        private long playerRoomId;
+
+        GameManager toGame() {
+            QuartlyLinkedList<Room> list = new QuartlyLinkedList<>();
+            SavedRoom root = this.rooms.get(this.rootId);
+            try {
+                if (root != null) {
+                    list.addAt(root.room, root.x, root.y);
+                }
+                for (SavedRoom saved : this.rooms.values()) {
+                    if (saved != root) {
+                        list.addAt(saved.room, saved.x, saved.y);
+                    }
+                }
+            } catch (DirectionIsOccupied e) {
+                throw new InvalidWorldFile("Two saved rooms share a cell.", e);
+            }
+            GameManager game = new GameManager(list);
+            if (this.player != null) {
+                SavedRoom room = this.rooms.get(this.playerRoomId);
+                game.placePlayer(this.player, room != null ? room.room : null);
+            }
+            return game;
+        }
+    }
+
+    private static final class SavedRoom {
+        private final Room room;
+        private final int x;
+        private final int y;
+
+        SavedRoom(Room room, int x, int y) {
+            this.room = room;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * What a save wrote and what it cost.
+     */
+    public static final class Report {
+        private final Path file;
+        private final boolean full;
+        private final int roomsWritten;
+        private final int roomsRemoved;
+        private final long bytes;
+        private final long pauseNanos;
+        private final long durationNanos;
+
+        Report(Path file, boolean full, int roomsWritten, int roomsRemoved, long bytes, long pauseNanos, long durationNanos) {
+            this.file = file;
+            this.full = full;
+            this.roomsWritten = roomsWritten;
+            this.roomsRemoved = roomsRemoved;
+            this.bytes = bytes;
+            this.pauseNanos = pauseNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        public Path getFile() {
+            return this.file;
+        }
+
+        /**
+         * Returns true if the save was a base, false if it was a delta.
+         */
+        public boolean isFull() {
+            return this.full;
+        }
+
+        public int getRoomsWritten() {
+            return this.roomsWritten;
+        }
+
+        public int getRoomsRemoved() {
+            return this.roomsRemoved;
+        }
+
+        public long getBytes() {
+            return this.bytes;
+        }
+
+        /**
+         * Returns how long the game thread was held up taking the snapshot, in nanoseconds.
+         */
+        public long getPauseNanos() {
+            return this.pauseNanos;
+        }
+
+        /**
+         * Returns how long the background thread took to write the file, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return this.durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d rooms written, %d removed, %d bytes in %.1f ms, game paused %.1f us",
+                    this.file.getFileName(), this.full ? "base" : "delta", this.roomsWritten, this.roomsRemoved,
+                    this.bytes, this.durationNanos / 1e6, this.pauseNanos / 1e3);
+        }
+    }
+}
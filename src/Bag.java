@@ -5,6 +5,7 @@ public class Bag extends Item implements Cloneable {
 
     protected Item[] items; // Array to store items in the bag
     protected int maxItems; // Maximum number of items the bag can hold
+    private long generation; // Clock reading at the last change of the contents, see Generation
 
     /**
      * Constructs a Bag object with a specified name, value, and maximum number of items.
@@ -18,6 +19,22 @@ public class Bag extends Item implements Cloneable {
         this.maxItems = max_items;
         this.value = value;
         this.items = null; // Initialize items array to null
+        this.generation = Generation.next();
+    }
+
+    /**
+     * Retrieves the generation of the bag, which moves forward whenever its contents change.
+     * Returns The generation.
+     */
+    long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Moves the generation forward after the contents changed.
+     */
+    protected void changed() {
+        this.generation = Generation.next();
     }
 
     /**
@@ -85,6 +102,7 @@ public class Bag extends Item implements Cloneable {
         }
         updatedBag[updatedBag.length - 1] = item;
         this.items = updatedBag;
+        this.changed();
         return true;
     }
 
@@ -109,6 +127,7 @@ public class Bag extends Item implements Cloneable {
         if (!isExist) {
             return false;
         }
+        this.changed();
         if (this.items.length == 1) {
             this.items = null;
             return true;
@@ -171,6 +190,7 @@ public class Bag extends Item implements Cloneable {
      */
     public void emptyBag() {
         this.items = null;
+        this.changed();
     }
 
     /**
@@ -226,12 +246,20 @@ public class Bag extends Item implements Cloneable {
     @Override
     public void useItem(Player player) {
         String name = this.getName();
-        if (player.getCurrentRoom().isItemExist(this) || player.isItemExist(this)) {
+        boolean held = player.isItemExist(this);
+        // A bag lying in the room is taken before the player switches to it, so when another player picks it up
+        // at the same moment only one of them gets it
+        if (held || player.getCurrentRoom().removeItem(this)) {
             boolean flag = player.changeBag(this);
             if (flag) {
                 player.setBag(this);
-                player.getCurrentRoom().removeItemIfExist(this); // Added
+                if (held) {
+                    player.getCurrentRoom().removeItemIfExist(this);
+                }
                 System.out.println(player.getName() + " is now carrying " + this.name + ".");
+            } else if (!held && !player.getCurrentRoom().addItem(this)) {
+                // The room filled up while the bag was out of it, so the player keeps it instead
+                player.addItem(this);
             }
         } else {
             System.out.println(this.getName() + " is not near " + player.getName() + ".");
@@ -242,9 +270,12 @@ public class Bag extends Item implements Cloneable {
     @Override
     public Bag clone()  {
         Bag copy = (Bag) super.clone();
+        if (this.items == null) {
+            return copy;
+        }
         copy.items = new Item[this.items.length];
         for (int i = 0; i < this.items.length; i++) {
-            copy.items[i] = this.items[i].clone();
+            copy.items[i] = this.items[i] != null ? this.items[i].clone() : null;
         }
         return copy;
     }
@@ -0,0 +1,84 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Measures how fast the rooms of a large world are copied, comparing a reflective call of clone per room,
+ * a cached method handle per class, and the plain call QuartNode makes for DeepCopyable values.
+ * It ends with the clone of the whole world, which copies every room the plain way.
+ *
+ * Usage: java CloneBenchmark [rooms] [rounds]
+ */
+public class CloneBenchmark {
+    private static final int DEFAULT_ROOMS = 1_000_000;
+    private static final int DEFAULT_ROUNDS = 5;
+
+    private static volatile Object sink; // keeps the copies from being optimized away
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The number of rooms, then the number of timed rounds.
+     */
+    public static void main(String[] args) throws Throwable {
+        int roomCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROOMS;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        int width = (int) Math.ceil(Math.sqrt(roomCount));
+        Room[] rooms = new Room[roomCount];
+        QuartlyLinkedList<Room> world = new QuartlyLinkedList<>();
+        for (int i = 0; i < roomCount; i++) {
+            rooms[i] = new Room("Room " + i);
+            if (i % 3 == 0) {
+                rooms[i].addItem(new Relic("Relic " + i, i % 100));
+            }
+            if (i == 0) {
+                world.add(rooms[i], null, null);
+            } else if (i % width == 0) {
+                world.add(rooms[i], rooms[i - width], Direction.NORTH);
+            } else {
+                world.add(rooms[i], rooms[i - 1], Direction.EAST);
+            }
+        }
+        System.out.println("World of " + roomCount + " rooms, best of " + rounds + " rounds.");
+
+        MethodHandle handle = MethodHandles.lookup().unreflect(Room.class.getMethod("clone"))
+                .asType(MethodType.methodType(Object.class, Object.class));
+        long reflective = Long.MAX_VALUE;
+        long handled = Long.MAX_VALUE;
+        long direct = Long.MAX_VALUE;
+        long whole = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (Room room : rooms) {
+                Method cloneMethod = room.getClass().getMethod("clone");
+                sink = cloneMethod.invoke(room);
+            }
+            reflective = Math.min(reflective, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (Room room : rooms) {
+                sink = (Object) handle.invokeExact((Object) room);
+            }
+            handled = Math.min(handled, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (Room room : rooms) {
+                sink = QuartNode.cloneValue(room);
+            }
+            direct = Math.min(direct, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sink = world.clone();
+            whole = Math.min(whole, System.nanoTime() - start);
+        }
+        report("getMethod and invoke", reflective, roomCount);
+        report("cached method handle", handled, roomCount);
+        report("DeepCopyable", direct, roomCount);
+        report("whole world clone", whole, roomCount);
+    }
+
+    private static void report(String label, long nanos, int roomCount) {
+        System.out.printf("%-22s %8.1f ms %8.1f ns/room%n", label, nanos / 1e6, (double) nanos / roomCount);
+    }
+}
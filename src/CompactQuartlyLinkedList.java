@@ -0,0 +1,733 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A QuartlyList backend that keeps the whole graph in flat arrays instead of one object per node.
+ * Node i keeps its four links in links[4 * i + direction.ordinal()], its value in values[i] and its grid cell
+ * in xs[i] and ys[i]. QuartNode views are only created when a caller asks for a node.
+ * Values are indexed by their hash code, so they must keep the same hash code while stored (as rooms do).
+ *
+ * @param <E> The type of value stored in the list, must extend Cloneable.
+ */
+public class CompactQuartlyLinkedList<E extends Cloneable> implements QuartlyList<E> {
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int[] links; // four neighbor indexes per node, NONE when there is no neighbor
+    private Object[] values; // value of each node, null for a free index
+    private int[] xs;
+    private int[] ys;
+    private byte[] entries; // entry direction ordinal + 1, 0 for the root
+    private int[] valueTable; // open addressing table of node index + 1 by value hash code, 0 when empty
+    private LongIntMap cells; // node index by packed grid cell
+    private int[] freeIndexes; // indexes released by remove, reused first
+    private int freeCount;
+    private int highWater; // number of indexes ever handed out
+    private int size;
+    private int root;
+
+    /**
+     * Constructs an empty CompactQuartlyLinkedList.
+     */
+    public CompactQuartlyLinkedList() {
+        this.links = new int[INITIAL_CAPACITY * 4];
+        this.values = new Object[INITIAL_CAPACITY];
+        this.xs = new int[INITIAL_CAPACITY];
+        this.ys = new int[INITIAL_CAPACITY];
+        this.entries = new byte[INITIAL_CAPACITY];
+        this.valueTable = new int[INITIAL_CAPACITY * 2];
+        this.cells = new LongIntMap();
+        this.freeIndexes = new int[INITIAL_CAPACITY];
+        this.freeCount = 0;
+        this.highWater = 0;
+        this.size = 0;
+        this.root = NONE;
+    }
+
+    /**
+     * Adds a new node with the specified value in the specified direction relative to the target value.
+     * The new node takes the grid cell next to the target and is linked to every occupied cell around it.
+     *
+     * @param toInsert  the value to insert
+     * @param target    the value to insert relative to
+     * @param direction the direction relative to the target value
+     * @throws NoSuchElement       if the target value does not exist in the list
+     * @throws DirectionIsOccupied if the direction is already occupied in the target node, or the cell is taken
+     */
+    public void add(E toInsert, E target, Direction direction) throws NoSuchElement, DirectionIsOccupied {
+        if (this.root == NONE) {
+            this.root = allocate(toInsert, 0, 0, 0);
+            return;
+        }
+        int targetIndex = indexOf(target);
+        if (targetIndex == NONE) {
+            throw new NoSuchElement();
+        }
+        int d = direction.ordinal();
+        int x = this.xs[targetIndex] + QuartlyLinkedList.deltaX(direction);
+        int y = this.ys[targetIndex] + QuartlyLinkedList.deltaY(direction);
+        if (this.links[targetIndex * 4 + d] != NONE || this.cells.get(CoordinateMap.pack(x, y)) != NONE) {
+            throw new DirectionIsOccupied();
+        }
+        int index = allocate(toInsert, x, y, d + 1);
+        for (Direction around : DIRECTIONS) {
+            int adjacent = this.cells.get(CoordinateMap.pack(x + QuartlyLinkedList.deltaX(around), y + QuartlyLinkedList.deltaY(around)));
+            int back = opposite(around.ordinal());
+            if (adjacent != NONE && this.links[adjacent * 4 + back] == NONE) {
+                this.links[index * 4 + around.ordinal()] = adjacent;
+                this.links[adjacent * 4 + back] = index;
+            }
+        }
+    }
+
+    /**
+     * Removes the node containing the specified value from the list.
+     * When the root is removed, its first neighbor in direction order becomes the new root.
+     *
+     * @param toRemove the value to remove
+     * @throws NoSuchElement if the specified value does not exist in the list
+     */
+    public void remove(E toRemove) throws NoSuchElement {
+        int index = indexOf(toRemove);
+        if (index == NONE) {
+            throw new NoSuchElement();
+        }
+        int successor = NONE;
+        for (int d = 0; d < 4 && successor == NONE; d++) {
+            successor = this.links[index * 4 + d];
+        }
+        disconnect(index);
+        unfile(index);
+        this.cells.remove(CoordinateMap.pack(this.xs[index], this.ys[index]));
+        this.values[index] = null;
+        this.entries[index] = 0;
+        if (this.freeCount == this.freeIndexes.length) {
+            this.freeIndexes = Arrays.copyOf(this.freeIndexes, this.freeCount * 2);
+        }
+        this.freeIndexes[this.freeCount++] = index;
+        this.size--;
+        if (this.root == index) {
+            this.root = successor != NONE ? successor : anyIndex();
+        }
+    }
+
+    /**
+     * Retrieves a view of the node containing the specified value.
+     *
+     * @param value the value to search for
+     * @return a view of the node containing the value, or null if not found
+     */
+    public QuartNode<E> getNode(E value) {
+        int index = indexOf(value);
+        return index == NONE ? null : new NodeView(index);
+    }
+
+    /**
+     * Retrieves a view of the node occupying the specified grid cell.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return a view of the node occupying the cell, or null if the cell is empty
+     */
+    public QuartNode<E> getNodeAt(int x, int y) {
+        int index = this.cells.get(CoordinateMap.pack(x, y));
+        return index == NONE ? null : new NodeView(index);
+    }
+
+    /**
+     * Checks if a node containing the specified value exists in the list.
+     *
+     * @param value the value to check for existence
+     * @return true if a node with the specified value exists, otherwise false
+     */
+    public boolean isExist(E value) {
+        return indexOf(value) != NONE;
+    }
+
+    /**
+     * Retrieves a view of the root node of the list.
+     *
+     * @return a view of the root node, or null if the list is empty
+     */
+    public QuartNode<E> getRoot() {
+        return this.root == NONE ? null : new NodeView(this.root);
+    }
+
+    /**
+     * Returns the number of nodes in the list.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a depth first iterator over views of the nodes reachable from the root,
+     * in the same order as QuartlyLinkedListIterator.
+     *
+     * @return an iterator
+     */
+    @Override
+    public Iterator<QuartNode<E>> iterator() {
+        return new CompactIterator();
+    }
+
+    /**
+     * Visits the value of every node reachable from the root in depth first order, without creating node views.
+     *
+     * @param action the action to perform on each value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super E> action) {
+        CompactIterator iterator = new CompactIterator();
+        while (iterator.hasNext()) {
+            action.accept((E) this.values[iterator.nextIndex()]);
+        }
+    }
+
+    /**
+     * Returns a stream over views of every node of the list, including the nodes a removal cut off from the root.
+     *
+     * @return a stream over the nodes
+     */
+    @Override
+    public Stream<QuartNode<E>> stream() {
+        return IntStream.range(0, this.highWater).filter(i -> this.values[i] != null).mapToObj(NodeView::new);
+    }
+
+    /**
+     * Checks if the nodes holding the two values are joined by a path of links.
+     * Nothing is kept between calls, so each check walks the links from the first node.
+     *
+     * @param first  the first value
+     * @param second the second value
+     * @return true if both values exist and are connected, otherwise false
+     */
+    @Override
+    public boolean isConnected(E first, E second) {
+        int from = indexOf(first);
+        int to = indexOf(second);
+        return from != NONE && to != NONE && search(from, to, value -> true, null, null);
+    }
+
+    /**
+     * Checks if the node holding the value can be reached from the root, and so is visited by the iterator.
+     *
+     * @param value the value to check
+     * @return true if the value exists and is connected to the root, otherwise false
+     */
+    @Override
+    public boolean isReachable(E value) {
+        int index = indexOf(value);
+        return index != NONE && search(this.root, index, element -> true, null, null);
+    }
+
+    /**
+     * Finds a shortest sequence of moves from one value to another with a breadth first search over the link
+     * array, where a walker may only step out of the nodes whose value passes the gate.
+     *
+     * @param from     the value to start from
+     * @param to       the value to reach
+     * @param canLeave tells whether a walker may leave the node holding a value
+     * @return the directions to follow, empty if both values share a node, or null if no route exists
+     * @throws NoSuchElement if either value does not exist in the list
+     */
+    @Override
+    public List<Direction> findPath(E from, E to, Predicate<? super E> canLeave) throws NoSuchElement {
+        int start = indexOf(from);
+        int goal = indexOf(to);
+        if (start == NONE || goal == NONE) {
+            throw new NoSuchElement();
+        }
+        int[] previous = new int[this.highWater];
+        byte[] directions = new byte[this.highWater];
+        if (!search(start, goal, canLeave, previous, directions)) {
+            return null;
+        }
+        List<Direction> route = new ArrayList<>();
+        for (int index = goal; index != start; index = previous[index]) {
+            route.add(DIRECTIONS[directions[index]]);
+        }
+        Collections.reverse(route);
+        return route;
+    }
+
+    /**
+     * Maps every value reachable from the root and combines the results on the workers of the common
+     * ForkJoinPool. The values are gathered by index first, so the workers read the value array directly.
+     *
+     * @param identity the identity of the combiner
+     * @param mapper   the function applied to each value
+     * @param combiner the associative function combining two results
+     * @param <R>      the type of the result
+     * @return the combined result, or identity if the list is empty
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R parallelReduce(R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner) {
+        int[] reachable = new int[this.size];
+        int count = 0;
+        CompactIterator iterator = new CompactIterator();
+        while (iterator.hasNext()) {
+            reachable[count++] = iterator.nextIndex();
+        }
+        return IntStream.of(reachable).limit(count).parallel()
+                .mapToObj(index -> (R) mapper.apply((E) this.values[index]))
+                .reduce(identity, combiner);
+    }
+
+    /**
+     * Creates and returns a deep copy of this list.
+     * The arrays are copied as they are and every value is cloned.
+     *
+     * @return a cloned instance of this list
+     */
+    @Override
+    public CompactQuartlyLinkedList<E> clone() {
+        return copy(false);
+    }
+
+    /**
+     * Creates a copy of this list with the same layout whose nodes hold the very same values as this list.
+     * Only the arrays are copied, so it costs far less than clone when the values are large.
+     *
+     * @return a copy of this list sharing its values
+     */
+    @Override
+    public CompactQuartlyLinkedList<E> cloneSharingValues() {
+        return copy(true);
+    }
+
+    /**
+     * Replaces the value held by a node, keeping the node where it is.
+     *
+     * @param oldValue the value held by the node now
+     * @param newValue the value to hold instead
+     * @return true if a node held the old value, otherwise false
+     */
+    @Override
+    public boolean replaceValue(E oldValue, E newValue) {
+        int index = indexOf(oldValue);
+        if (index == NONE || this.values[index] != oldValue) {
+            return false;
+        }
+        unfile(index);
+        this.values[index] = newValue;
+        file(index);
+        return true;
+    }
+
+    /**
+     * Copies the arrays of this list as they are.
+     *
+     * @param shareValues true to keep the values of this list, false to clone them
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    private CompactQuartlyLinkedList<E> copy(boolean shareValues) {
+        try {
+            CompactQuartlyLinkedList<E> copy = (CompactQuartlyLinkedList<E>) super.clone();
+            copy.links = Arrays.copyOf(this.links, this.links.length);
+            if (shareValues) {
+                copy.values = Arrays.copyOf(this.values, this.values.length);
+            } else {
+                copy.values = new Object[this.values.length];
+                for (int i = 0; i < this.highWater; i++) {
+                    if (this.values[i] != null) {
+                        copy.values[i] = QuartNode.cloneValue((Cloneable) this.values[i]);
+                    }
+                }
+            }
+            copy.xs = Arrays.copyOf(this.xs, this.xs.length);
+            copy.ys = Arrays.copyOf(this.ys, this.ys.length);
+            copy.entries = Arrays.copyOf(this.entries, this.entries.length);
+            copy.valueTable = Arrays.copyOf(this.valueTable, this.valueTable.length);
+            copy.cells = this.cells.clone();
+            copy.freeIndexes = Arrays.copyOf(this.freeIndexes, this.freeIndexes.length);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Walks the links breadth first from one node until it reaches another, leaving only the nodes whose value
+     * passes the gate.
+     *
+     * @param start      the index to start from
+     * @param goal       the index to reach
+     * @param canLeave   tells whether a walker may leave the node holding a value
+     * @param previous   filled with the index each reached node was entered from, or null
+     * @param directions filled with the direction ordinal each reached node was entered by, or null
+     * @return true if the goal was reached, otherwise false
+     */
+    @SuppressWarnings("unchecked")
+    private boolean search(int start, int goal, Predicate<? super E> canLeave, int[] previous, byte[] directions) {
+        if (start == NONE) {
+            return false;
+        }
+        if (start == goal) {
+            return true;
+        }
+        long[] marks = new long[(this.highWater + 63) >>> 6];
+        int[] queue = new int[this.size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        marks[start >>> 6] |= 1L << start;
+        while (head < tail) {
+            int current = queue[head++];
+            if (!canLeave.test((E) this.values[current])) {
+                continue;
+            }
+            for (int d = 0; d < 4; d++) {
+                int neighbor = this.links[current * 4 + d];
+                if (neighbor == NONE || (marks[neighbor >>> 6] & (1L << neighbor)) != 0) {
+                    continue;
+                }
+                marks[neighbor >>> 6] |= 1L << neighbor;
+                if (previous != null) {
+                    previous[neighbor] = current;
+                    directions[neighbor] = (byte) d;
+                }
+                if (neighbor == goal) {
+                    return true;
+                }
+                queue[tail++] = neighbor;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands out an index for a new node and stores its value and cell.
+     *
+     * @param value the value of the node
+     * @param x     the x coordinate of the node
+     * @param y     the y coordinate of the node
+     * @param entry the entry direction ordinal + 1, 0 for the root
+     * @return the index of the new node
+     */
+    private int allocate(E value, int x, int y, int entry) {
+        int index;
+        if (this.freeCount > 0) {
+            index = this.freeIndexes[--this.freeCount];
+        } else {
+            if (this.highWater == this.values.length) {
+                grow();
+            }
+            index = this.highWater++;
+        }
+        Arrays.fill(this.links, index * 4, index * 4 + 4, NONE);
+        this.values[index] = value;
+        this.xs[index] = x;
+        this.ys[index] = y;
+        this.entries[index] = (byte) entry;
+        this.size++;
+        file(index);
+        this.cells.put(CoordinateMap.pack(x, y), index);
+        return index;
+    }
+
+    /**
+     * Doubles the capacity of the node arrays.
+     */
+    private void grow() {
+        int capacity = this.values.length * 2;
+        int from = this.links.length;
+        this.links = Arrays.copyOf(this.links, capacity * 4);
+        Arrays.fill(this.links, from, this.links.length, NONE);
+        this.values = Arrays.copyOf(this.values, capacity);
+        this.xs = Arrays.copyOf(this.xs, capacity);
+        this.ys = Arrays.copyOf(this.ys, capacity);
+        this.entries = Arrays.copyOf(this.entries, capacity);
+    }
+
+    /**
+     * Unlinks the node from all its neighbors.
+     *
+     * @param index the index of the node
+     */
+    private void disconnect(int index) {
+        for (int d = 0; d < 4; d++) {
+            int neighbor = this.links[index * 4 + d];
+            if (neighbor != NONE) {
+                this.links[neighbor * 4 + opposite(d)] = NONE;
+                this.links[index * 4 + d] = NONE;
+            }
+        }
+    }
+
+    /**
+     * Finds any node still in the list.
+     *
+     * @return the index of a live node, or NONE if the list is empty
+     */
+    private int anyIndex() {
+        for (int i = 0; i < this.highWater && this.size > 0; i++) {
+            if (this.values[i] != null) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the index of the node holding a value equal to the given one.
+     *
+     * @param value the value to look for
+     * @return the index of the node, or NONE if not found
+     */
+    private int indexOf(E value) {
+        if (value == null) {
+            return NONE;
+        }
+        int mask = this.valueTable.length - 1;
+        for (int i = slot(value.hashCode(), mask); this.valueTable[i] != 0; i = (i + 1) & mask) {
+            Object candidate = this.values[this.valueTable[i] - 1];
+            if (candidate == value || candidate.equals(value)) {
+                return this.valueTable[i] - 1;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Files the node in the value table under the hash code of its value.
+     *
+     * @param index the index of the node
+     */
+    private void file(int index) {
+        if (this.size * 2 > this.valueTable.length) {
+            rehash(this.valueTable.length * 2);
+        }
+        int mask = this.valueTable.length - 1;
+        int i = slot(this.values[index].hashCode(), mask);
+        while (this.valueTable[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.valueTable[i] = index + 1;
+    }
+
+    /**
+     * Removes the node from the value table.
+     *
+     * @param index the index of the node
+     */
+    private void unfile(int index) {
+        int mask = this.valueTable.length - 1;
+        int i = slot(this.values[index].hashCode(), mask);
+        while (this.valueTable[i] != 0 && this.valueTable[i] != index + 1) {
+            i = (i + 1) & mask;
+        }
+        if (this.valueTable[i] == 0) {
+            return;
+        }
+        this.valueTable[i] = 0;
+        // Shift the following entries back so that no probe sequence is broken
+        int free = i;
+        for (i = (i + 1) & mask; this.valueTable[i] != 0; i = (i + 1) & mask) {
+            int home = slot(this.values[this.valueTable[i] - 1].hashCode(), mask);
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                this.valueTable[free] = this.valueTable[i];
+                this.valueTable[i] = 0;
+                free = i;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the value table with the given capacity.
+     *
+     * @param capacity the new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        int[] old = this.valueTable;
+        this.valueTable = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int i = slot(this.values[entry - 1].hashCode(), mask);
+                while (this.valueTable[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.valueTable[i] = entry;
+            }
+        }
+    }
+
+    private static int slot(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int opposite(int d) {
+        return (d + 2) & 3;
+    }
+
+    /**
+     * Depth first traversal over node indexes, checking neighbors in direction order.
+     */
+    private class CompactIterator implements Iterator<QuartNode<E>> {
+        private final long[] marks = new long[(highWater + 63) >>> 6];
+        private int[] stack = new int[16];
+        private int depth = 0;
+        private int nextIndex = root;
+
+        @Override
+        public boolean hasNext() {
+            return this.nextIndex != NONE;
+        }
+
+        @Override
+        public QuartNode<E> next() {
+            return new NodeView(nextIndex());
+        }
+
+        /**
+         * Advances the traversal.
+         *
+         * @return the index of the next node
+         */
+        int nextIndex() {
+            if (this.nextIndex == NONE) {
+                throw new NoSuchElementException();
+            }
+            int prev = this.nextIndex;
+            push(prev);
+            while (this.depth > 0) {
+                int current = this.stack[this.depth - 1];
+                for (int d = 0; d < 4; d++) {
+                    int neighbor = links[current * 4 + d];
+                    if (neighbor != NONE && (this.marks[neighbor >>> 6] & (1L << neighbor)) == 0) {
+                        push(neighbor);
+                        this.nextIndex = neighbor;
+                        return prev;
+                    }
+                }
+                this.depth--;
+            }
+            this.nextIndex = NONE;
+            return prev;
+        }
+
+        private void push(int index) {
+            if (this.depth == this.stack.length) {
+                this.stack = Arrays.copyOf(this.stack, this.depth * 2);
+            }
+            this.stack[this.depth++] = index;
+            this.marks[index >>> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * A lightweight QuartNode view over one index of the arrays.
+     */
+    private class NodeView extends QuartNode<E> {
+        private final int index;
+
+        NodeView(int index) {
+            super(null);
+            this.index = index;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E getValue() {
+            return (E) values[this.index];
+        }
+
+        @Override
+        public void setValue(E value) {
+            if (values[this.index] != null) {
+                unfile(this.index);
+            }
+            values[this.index] = value;
+            if (value != null) {
+                file(this.index);
+            }
+        }
+
+        @Override
+        public QuartNode<E> getNeighbor(Direction direction) {
+            int neighbor = links[this.index * 4 + direction.ordinal()];
+            return neighbor == NONE ? null : new NodeView(neighbor);
+        }
+
+        @Override
+        public void setNeighbor(Direction direction, QuartNode<E> neighbor) {
+            if (neighbor == null) {
+                links[this.index * 4 + direction.ordinal()] = NONE;
+            } else if (neighbor instanceof CompactQuartlyLinkedList.NodeView && ((NodeView) neighbor).owner() == CompactQuartlyLinkedList.this) {
+                links[this.index * 4 + direction.ordinal()] = ((NodeView) neighbor).index;
+            } else {
+                throw new IllegalArgumentException("Neighbor does not belong to this list");
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            CompactQuartlyLinkedList.this.disconnect(this.index);
+        }
+
+        @Override
+        public Direction getEntryDirection() {
+            return entries[this.index] == 0 ? null : DIRECTIONS[entries[this.index] - 1];
+        }
+
+        @Override
+        public int getX() {
+            return xs[this.index];
+        }
+
+        @Override
+        public int getY() {
+            return ys[this.index];
+        }
+
+        /**
+         * Clones the node into a standalone QuartNode holding a copy of the value.
+         *
+         * @return A detached deep copy of the node.
+         */
+        @Override
+        public QuartNode<E> clone() {
+            try {
+                E value = getValue();
+                return new QuartNode<>(value == null ? null : QuartNode.cloneValue(value));
+            } catch (CloneNotSupportedException e) {
+                return null;
+            }
+        }
+
+        private CompactQuartlyLinkedList<E> owner() {
+            return CompactQuartlyLinkedList.this;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof CompactQuartlyLinkedList<?>.NodeView)) {
+                return false;
+            }
+            CompactQuartlyLinkedList<?>.NodeView other = (CompactQuartlyLinkedList<?>.NodeView) object;
+            return other.owner() == owner() && other.index == this.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.index;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks which nodes of a QuartlyLinkedList are connected to each other.
+ * Inserts are merged into a union-find over elements, one element per node. A removal can split a set, which a
+ * union-find cannot express, so the former neighbors of the removed node are searched from in turns until every
+ * search but one has run dry: only the pieces that were split off are walked and moved to fresh elements,
+ * while the largest piece keeps the elements it had.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ */
+class Connectivity<E extends Cloneable> {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int[] parent; // union-find parent by element, element 0 is unused
+    private int[] rank;
+    private int elementCount;
+    private int[] elementOfSlot; // element of the node in each slot, 0 for none
+    private int[] seenBy; // search that reached each slot during a removal
+    private int[] seenStamp; // removal that set seenBy
+    private int stamp;
+
+    /**
+     * Constructs an empty Connectivity.
+     */
+    Connectivity() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty Connectivity with room for the given number of slots, so that tracking that many nodes
+     * never grows an array.
+     *
+     * @param slots The number of slots to make room for.
+     */
+    Connectivity(int slots) {
+        int capacity = Math.max(16, slots);
+        this.parent = new int[capacity];
+        this.rank = new int[capacity];
+        this.elementCount = 1;
+        this.elementOfSlot = new int[capacity];
+        this.seenBy = new int[capacity];
+        this.seenStamp = new int[capacity];
+        this.stamp = 0;
+    }
+
+    /**
+     * Records a node that was just placed, joining it with every neighbor already tracked.
+     *
+     * @param node The node to track.
+     */
+    void added(QuartNode<E> node) {
+        int slot = node.getSlot();
+        ensureSlots(slot + 1);
+        this.elementOfSlot[slot] = newElement();
+        for (Direction direction : DIRECTIONS) {
+            QuartNode<E> neighbor = node.getNeighbor(direction);
+            if (neighbor != null && neighbor.getSlot() > 0 && neighbor.getSlot() < this.elementOfSlot.length
+                    && this.elementOfSlot[neighbor.getSlot()] != 0) {
+                union(this.elementOfSlot[slot], this.elementOfSlot[neighbor.getSlot()]);
+            }
+        }
+    }
+
+    /**
+     * Copies the tracking for a copy of the list whose nodes kept their slots.
+     *
+     * @return The copy.
+     */
+    Connectivity<E> copy() {
+        Connectivity<E> copy = new Connectivity<>();
+        copy.parent = this.parent.clone();
+        copy.rank = this.rank.clone();
+        copy.elementCount = this.elementCount;
+        copy.elementOfSlot = this.elementOfSlot.clone();
+        copy.seenBy = new int[this.seenBy.length];
+        copy.seenStamp = new int[this.seenStamp.length];
+        return copy;
+    }
+
+    /**
+     * Returns the number of union-find elements handed out, including the ones left behind by removals.
+     *
+     * @return the number of elements
+     */
+    int elementCount() {
+        return this.elementCount - 1;
+    }
+
+    /**
+     * Checks if two nodes are connected.
+     *
+     * @param first  The first node.
+     * @param second The second node.
+     * @return true if a path of links joins the two nodes, otherwise false.
+     */
+    boolean connected(QuartNode<E> first, QuartNode<E> second) {
+        int a = elementOf(first);
+        int b = elementOf(second);
+        return a != 0 && b != 0 && find(a) == find(b);
+    }
+
+    /**
+     * Updates the tracking after a node was disconnected from its former neighbors.
+     *
+     * @param removed   The node that was removed, already disconnected.
+     * @param neighbors The former neighbors of the removed node.
+     * @param anchor    The node the pieces must stay connected to, usually the root. When it is the removed node
+     *                  itself, every piece is cut off.
+     * @return The pieces that were connected to the anchor before the removal and are not anymore.
+     */
+    List<List<QuartNode<E>>> removed(QuartNode<E> removed, List<QuartNode<E>> neighbors, QuartNode<E> anchor) {
+        int removedElement = elementOf(removed);
+        boolean walkAll = anchor == removed;
+        boolean anchored = anchor != null && !walkAll && removedElement != 0 && elementOf(anchor) != 0
+                && find(removedElement) == find(elementOf(anchor));
+        if (removedElement != 0) {
+            this.elementOfSlot[removed.getSlot()] = 0;
+        }
+        List<List<QuartNode<E>>> orphans = new ArrayList<>();
+        int searches = neighbors.size();
+        if (searches == 0) {
+            return orphans;
+        }
+        if (++this.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(this.seenStamp, 0);
+            this.stamp = 1;
+        }
+        // Every search walks its own queue, searches that meet are merged into one group
+        List<List<QuartNode<E>>> visited = new ArrayList<>(searches);
+        int[] cursor = new int[searches];
+        int[] group = new int[searches];
+        for (int i = 0; i < searches; i++) {
+            visited.add(new ArrayList<>());
+            group[i] = i;
+            QuartNode<E> start = neighbors.get(i);
+            int seen = seenBy(start);
+            if (seen >= 0) {
+                mergeGroups(group, seen, i);
+            } else {
+                mark(start, i);
+                visited.get(i).add(start);
+            }
+        }
+        while (walkAll ? liveSearches(visited, cursor) > 0 : liveGroups(visited, cursor, group) > 1) {
+            for (int i = 0; i < searches; i++) {
+                if (cursor[i] < visited.get(i).size()) {
+                    step(i, visited, cursor, group);
+                }
+            }
+        }
+        // The group still running (or else the largest) keeps its elements, the others move to fresh ones
+        int keep = -1;
+        for (int i = 0; i < searches; i++) {
+            if (!finished(groupOf(group, i), visited, cursor, group)) {
+                keep = groupOf(group, i);
+            }
+        }
+        if (keep < 0) {
+            keep = largestGroup(visited, group);
+        }
+        int anchorGroup = -1;
+        if (anchored) {
+            int seen = seenBy(anchor);
+            anchorGroup = seen >= 0 ? groupOf(group, seen) : keep;
+            if (anchorGroup != keep) {
+                // The anchor went with a small piece, so the kept piece is cut off and must be walked in full
+                while (!finished(keep, visited, cursor, group)) {
+                    for (int i = 0; i < searches; i++) {
+                        if (groupOf(group, i) == keep && cursor[i] < visited.get(i).size()) {
+                            step(i, visited, cursor, group);
+                        }
+                    }
+                }
+            }
+        }
+        for (int g = 0; g < searches; g++) {
+            if (groupOf(group, g) != g) {
+                continue;
+            }
+            List<QuartNode<E>> piece = collect(g, visited, group);
+            if (g != keep) {
+                int element = newElement();
+                for (QuartNode<E> node : piece) {
+                    this.elementOfSlot[node.getSlot()] = element;
+                }
+            }
+            if (walkAll || (anchored && g != anchorGroup)) {
+                orphans.add(piece);
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * Visits the next node of a search, queueing its unseen neighbors.
+     */
+    private void step(int search, List<List<QuartNode<E>>> visited, int[] cursor, int[] group) {
+        QuartNode<E> node = visited.get(search).get(cursor[search]++);
+        for (Direction direction : DIRECTIONS) {
+            QuartNode<E> neighbor = node.getNeighbor(direction);
+            if (neighbor == null || neighbor.getSlot() == 0) {
+                continue;
+            }
+            int seen = seenBy(neighbor);
+            if (seen < 0) {
+                mark(neighbor, search);
+                visited.get(search).add(neighbor);
+            } else {
+                mergeGroups(group, seen, search);
+            }
+        }
+    }
+
+    private int liveSearches(List<List<QuartNode<E>>> visited, int[] cursor) {
+        int live = 0;
+        for (int i = 0; i < cursor.length; i++) {
+            if (cursor[i] < visited.get(i).size()) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private int liveGroups(List<List<QuartNode<E>>> visited, int[] cursor, int[] group) {
+        int live = 0;
+        for (int g = 0; g < cursor.length; g++) {
+            if (groupOf(group, g) == g && !finished(g, visited, cursor, group)) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private boolean finished(int g, List<List<QuartNode<E>>> visited, int[] cursor, int[] group) {
+        for (int i = 0; i < cursor.length; i++) {
+            if (groupOf(group, i) == g && cursor[i] < visited.get(i).size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int largestGroup(List<List<QuartNode<E>>> visited, int[] group) {
+        int best = groupOf(group, 0);
+        int bestSize = -1;
+        for (int g = 0; g < group.length; g++) {
+            if (groupOf(group, g) == g) {
+                int size = collect(g, visited, group).size();
+                if (size > bestSize) {
+                    best = g;
+                    bestSize = size;
+                }
+            }
+        }
+        return best;
+    }
+
+    private List<QuartNode<E>> collect(int g, List<List<QuartNode<E>>> visited, int[] group) {
+        List<QuartNode<E>> piece = new ArrayList<>();
+        for (int i = 0; i < group.length; i++) {
+            if (groupOf(group, i) == g) {
+                piece.addAll(visited.get(i));
+            }
+        }
+        return piece;
+    }
+
+    private static int groupOf(int[] group, int search) {
+        while (group[search] != search) {
+            search = group[search];
+        }
+        return search;
+    }
+
+    private static void mergeGroups(int[] group, int first, int second) {
+        int a = groupOf(group, first);
+        int b = groupOf(group, second);
+        if (a != b) {
+            group[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    private int seenBy(QuartNode<E> node) {
+        int slot = node.getSlot();
+        ensureSlots(slot + 1);
+        return this.seenStamp[slot] == this.stamp ? this.seenBy[slot] : -1;
+    }
+
+    private void mark(QuartNode<E> node, int search) {
+        this.seenStamp[node.getSlot()] = this.stamp;
+        this.seenBy[node.getSlot()] = search;
+    }
+
+    private int elementOf(QuartNode<E> node) {
+        int slot = node.getSlot();
+        return slot > 0 && slot < this.elementOfSlot.length ? this.elementOfSlot[slot] : 0;
+    }
+
+    private int newElement() {
+        if (this.elementCount == this.parent.length) {
+            this.parent = Arrays.copyOf(this.parent, this.elementCount * 2);
+            this.rank = Arrays.copyOf(this.rank, this.elementCount * 2);
+        }
+        int element = this.elementCount++;
+        this.parent[element] = element;
+        this.rank[element] = 0;
+        return element;
+    }
+
+    private int find(int element) {
+        while (this.parent[element] != element) {
+            this.parent[element] = this.parent[this.parent[element]];
+            element = this.parent[element];
+        }
+        return element;
+    }
+
+    private void union(int first, int second) {
+        int a = find(first);
+        int b = find(second);
+        if (a == b) {
+            return;
+        }
+        if (this.rank[a] < this.rank[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        this.parent[b] = a;
+        if (this.rank[a] == this.rank[b]) {
+            this.rank[a]++;
+        }
+    }
+
+    private void ensureSlots(int slots) {
+        if (this.elementOfSlot.length < slots) {
+            int capacity = Math.max(slots, this.elementOfSlot.length * 2);
+            this.elementOfSlot = Arrays.copyOf(this.elementOfSlot, capacity);
+            this.seenBy = Arrays.copyOf(this.seenBy, capacity);
+            this.seenStamp = Arrays.copyOf(this.seenStamp, capacity);
+        }
+    }
+}
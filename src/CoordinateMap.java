@@ -0,0 +1,102 @@
+import java.util.function.IntFunction;
+
+/**
+ * A map from grid coordinates to the node occupying that cell.
+ * The two coordinates are packed into a single primitive long, and the cell is mapped to the slot of its node in a
+ * LongIntMap, so lookups neither box nor allocate. The node itself is read from the slot table of the list.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ */
+class CoordinateMap<E extends Cloneable> {
+    private final LongIntMap slots; // slot of the node occupying each cell, by packed cell
+    private final IntFunction<QuartNode<E>> nodes; // node of a slot, read from the slot table of the list
+
+    /**
+     * Constructs an empty CoordinateMap.
+     *
+     * @param nodes Returns the node of a slot of the list the map indexes.
+     */
+    CoordinateMap(IntFunction<QuartNode<E>> nodes) {
+        this(new LongIntMap(), nodes);
+    }
+
+    /**
+     * Constructs an empty CoordinateMap that holds the given number of cells without resizing.
+     *
+     * @param expectedSize The number of cells to make room for.
+     * @param nodes        Returns the node of a slot of the list the map indexes.
+     */
+    CoordinateMap(int expectedSize, IntFunction<QuartNode<E>> nodes) {
+        this(new LongIntMap(expectedSize), nodes);
+    }
+
+    private CoordinateMap(LongIntMap slots, IntFunction<QuartNode<E>> nodes) {
+        this.slots = slots;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Packs a pair of coordinates into a single key.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The packed key.
+     */
+    static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Retrieves the node occupying the given cell.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The node occupying the cell, or null if the cell is empty.
+     */
+    QuartNode<E> get(int x, int y) {
+        int slot = this.slots.get(pack(x, y));
+        return slot < 0 ? null : this.nodes.apply(slot);
+    }
+
+    /**
+     * Places the node in the cell given by its own coordinates, replacing any node that was there.
+     * The node must already hold its slot in the list.
+     *
+     * @param node The node to place.
+     */
+    void put(QuartNode<E> node) {
+        this.slots.put(pack(node.getX(), node.getY()), node.getSlot());
+    }
+
+    /**
+     * Empties the cell given by the coordinates of the node, if the node is the one occupying it.
+     * The node must still hold its slot in the list.
+     *
+     * @param node The node to remove.
+     */
+    void remove(QuartNode<E> node) {
+        long key = pack(node.getX(), node.getY());
+        if (this.slots.get(key) == node.getSlot()) {
+            this.slots.remove(key);
+        }
+    }
+
+    /**
+     * Copies the map for a copy of the list whose nodes kept their slots, without hashing any key again.
+     *
+     * @param nodes Returns the node of a slot of the copy.
+     * @return A map placing every copy in the cell of its original.
+     */
+    CoordinateMap<E> copy(IntFunction<QuartNode<E>> nodes) {
+        return new CoordinateMap<>(this.slots.clone(), nodes);
+    }
+
+    /**
+     * Returns the number of occupied cells.
+     *
+     * @return The number of occupied cells.
+     */
+    int size() {
+        return this.slots.size();
+    }
+}
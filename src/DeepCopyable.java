@@ -0,0 +1,15 @@
+/**
+ * A value that knows how to copy itself, so the lists holding it can clone it with a plain method call.
+ * Values that are only Cloneable keep working, they are copied through their public clone method instead.
+ *
+ * @param <T> The type of the copy.
+ */
+public interface DeepCopyable<T> extends Cloneable {
+
+    /**
+     * Creates a deep copy of this value.
+     *
+     * @return The copy.
+     */
+    T deepCopy();
+}
@@ -0,0 +1,321 @@
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets any number of threads play a GameManager that is not thread safe, by handing every call to a single thread
+ * that owns the game and applies the calls one at a time, in the order they were queued.
+ *
+ * Calls travel through a ring buffer whose slots are all allocated up front. A caller claims the next sequence
+ * number, waits until the slot of that number is free, writes the call into it and publishes it; the applier
+ * picks the published slots up in sequence order, applies them, and leaves what the game printed and any
+ * exception in the same slot, which doubles as the completion the caller waits on. The caller then frees the slot
+ * for the call one lap later. Callers only ever contend on the counter handing out sequence numbers, and nothing
+ * is locked.
+ *
+ * The applier drains every call published so far in one cycle and hands the console output of the whole cycle
+ * to the output stream in a single write.
+ */
+public class GameActor implements Closeable {
+    private static final int SPINS = 256; // busy checks before a waiting thread parks
+
+    private enum Op {
+        ADD_PLAYER, ADD_ROOM, ADD_ITEM, REMOVE_PLAYER, REMOVE_ROOM, START_PLAYER, MOVE_PLAYER, PICK_UP_ITEM,
+        DROP_ITEM, DISASSEMBLE_ITEM, SOLVE_PUZZLE, ACTIVATE_PUZZLE, DEACTIVATE_PUZZLE, USE_ITEM
+    }
+
+    private final GameManager game;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong next; // next sequence number to hand out
+    private final PrintStream output; // where the output of each cycle goes, null to drop it
+    private final SessionConsole console;
+    private final Thread applier;
+    private volatile boolean idle; // true while the applier is parked waiting for calls
+    private volatile boolean running;
+
+    /**
+     * Starts an applier owning a game.
+     *
+     * @param game     The game. Once handed over, it must only be reached through this actor.
+     * @param capacity The number of slots of the ring, a power of two.
+     * @param output   Where the console output of every drain cycle is written, or null to drop it.
+     */
+    public GameActor(GameManager game, int capacity, PrintStream output) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two.");
+        }
+        this.game = game;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+        this.next = new AtomicLong();
+        this.console = SessionConsole.install();
+        this.output = output;
+        this.idle = false;
+        this.running = true;
+        this.applier = new Thread(this::apply, "game-applier");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    public String addPlayer(Player player) {
+        return call(Op.ADD_PLAYER, player, null, null);
+    }
+
+    public String addRoom(Room toInsert, Room target, Direction direction) {
+        return call(Op.ADD_ROOM, toInsert, target, direction);
+    }
+
+    public String addItem(Room room, Item item) {
+        return call(Op.ADD_ITEM, room, item, null);
+    }
+
+    public String removePlayer(Player player) {
+        return call(Op.REMOVE_PLAYER, player, null, null);
+    }
+
+    public String removeRoom(Room room) {
+        return call(Op.REMOVE_ROOM, room, null, null);
+    }
+
+    public String startPlayer(Room room) {
+        return call(Op.START_PLAYER, room, null, null);
+    }
+
+    public String movePlayer(Direction direction) {
+        return call(Op.MOVE_PLAYER, direction, null, null);
+    }
+
+    public String pickUpItem(Item item) {
+        return call(Op.PICK_UP_ITEM, item, null, null);
+    }
+
+    public String dropItem(Item item) {
+        return call(Op.DROP_ITEM, item, null, null);
+    }
+
+    public String disassembleItem(Item item) {
+        return call(Op.DISASSEMBLE_ITEM, item, null, null);
+    }
+
+    public String solvePuzzle() {
+        return call(Op.SOLVE_PUZZLE, null, null, null);
+    }
+
+    public String activatePuzzle(Room room) {
+        return call(Op.ACTIVATE_PUZZLE, room, null, null);
+    }
+
+    public String deactivatePuzzle(Room room) {
+        return call(Op.DEACTIVATE_PUZZLE, room, null, null);
+    }
+
+    public String useItem(Item item) {
+        return call(Op.USE_ITEM, item, null, null);
+    }
+
+    /**
+     * Queues a call, waits until the applier applied it and collects its result from the slot.
+     *
+     * Returns What the game printed for the call.
+     * throws the RuntimeException the game threw for the call, in the calling thread.
+     */
+    private String call(Op op, Object first, Object second, Object third) {
+        if (!this.running) {
+            throw new IllegalStateException("The game actor is closed.");
+        }
+        long sequence = this.next.getAndIncrement();
+        Slot slot = this.slots[(int) (sequence & this.mask)];
+        for (int spins = 0; slot.turn != sequence; spins++) {
+            // The ring is full, the slot still holds the call of the lap before
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1000);
+            }
+        }
+        slot.op = op;
+        slot.first = first;
+        slot.second = second;
+        slot.third = third;
+        slot.waiter = Thread.currentThread();
+        slot.published = sequence;
+        if (this.idle) {
+            LockSupport.unpark(this.applier);
+        }
+        for (int spins = 0; slot.completed != sequence; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (!this.applier.isAlive()) {
+                throw new IllegalStateException("The game actor closed before applying the call.");
+            } else {
+                LockSupport.parkNanos(this, 1_000_000);
+            }
+        }
+        String printed = slot.output.toString();
+        RuntimeException failure = slot.failure;
+        slot.first = null;
+        slot.second = null;
+        slot.third = null;
+        slot.waiter = null;
+        slot.failure = null;
+        slot.turn = sequence + this.slots.length;
+        if (failure != null) {
+            throw failure;
+        }
+        return printed;
+    }
+
+    /**
+     * The applier loop: drains every published call in sequence order, one cycle at a time.
+     */
+    private void apply() {
+        StringBuilder cycle = new StringBuilder(4096);
+        long sequence = 0;
+        while (true) {
+            int applied = 0;
+            Slot slot = this.slots[(int) (sequence & this.mask)];
+            // A cycle ends after a lap of the ring, so the output is handed on even while calls keep coming
+            while (applied < this.slots.length && slot.published == sequence) {
+                slot.output.setLength(0);
+                this.console.capture(slot.output);
+                try {
+                    run(slot);
+                } catch (RuntimeException e) {
+                    slot.failure = e;
+                } finally {
+                    this.console.capture(null);
+                }
+                cycle.append(slot.output);
+                Thread waiter = slot.waiter;
+                slot.completed = sequence;
+                LockSupport.unpark(waiter);
+                sequence++;
+                applied++;
+                slot = this.slots[(int) (sequence & this.mask)];
+            }
+            if (applied > 0) {
+                if (this.output != null && cycle.length() > 0) {
+                    this.output.print(cycle);
+                    this.output.flush();
+                }
+                cycle.setLength(0);
+                continue;
+            }
+            if (!this.running && sequence == this.next.get()) {
+                return;
+            }
+            waitForCall(slot, sequence);
+        }
+    }
+
+    /**
+     * Waits until the call of the given sequence is published, spinning a while before parking.
+     */
+    private void waitForCall(Slot slot, long sequence) {
+        for (int spins = 0; spins < SPINS; spins++) {
+            if (slot.published == sequence) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        this.idle = true;
+        // Checked again after raising the flag, so a call published in between is not missed
+        if (slot.published != sequence && this.running) {
+            LockSupport.parkNanos(this, 1_000_000);
+        }
+        this.idle = false;
+    }
+
+    private void run(Slot slot) {
+        switch (slot.op) {
+            case ADD_PLAYER:
+                this.game.addPlayer((Player) slot.first);
+                break;
+            case ADD_ROOM:
+                this.game.addRoom((Room) slot.first, (Room) slot.second, (Direction) slot.third);
+                break;
+            case ADD_ITEM:
+                this.game.addItem((Room) slot.first, (Item) slot.second);
+                break;
+            case REMOVE_PLAYER:
+                this.game.removePlayer((Player) slot.first);
+                break;
+            case REMOVE_ROOM:
+                this.game.removeRoom((Room) slot.first);
+                break;
+            case START_PLAYER:
+                this.game.startPlayer((Room) slot.first);
+                break;
+            case MOVE_PLAYER:
+                this.game.movePlayer((Direction) slot.first);
+                break;
+            case PICK_UP_ITEM:
+                this.game.pickUpItem((Item) slot.first);
+                break;
+            case DROP_ITEM:
+                this.game.dropItem((Item) slot.first);
+                break;
+            case DISASSEMBLE_ITEM:
+                this.game.disassembleItem((Item) slot.first);
+                break;
+            case SOLVE_PUZZLE:
+                this.game.solvePuzzle();
+                break;
+            case ACTIVATE_PUZZLE:
+                this.game.activatePuzzle((Room) slot.first);
+                break;
+            case DEACTIVATE_PUZZLE:
+                this.game.deactivatePuzzle((Room) slot.first);
+                break;
+            case USE_ITEM:
+                this.game.useItem((Item) slot.first);
+                break;
+        }
+    }
+
+    /**
+     * Stops taking calls, lets the applier finish the ones already queued and waits for it.
+     */
+    @Override
+    public void close() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        LockSupport.unpark(this.applier);
+        try {
+            this.applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SessionConsole.release(this.console);
+    }
+
+    /**
+     * A slot of the ring: a call on its way in, then its completion on its way out.
+     */
+    private static final class Slot {
+        private volatile long turn; // sequence a caller may claim the slot for
+        private volatile long published; // sequence of the call written into the slot
+        private volatile long completed; // sequence of the call applied
+        private Op op;
+        private Object first;
+        private Object second;
+        private Object third;
+        private Thread waiter;
+        private final StringBuilder output; // what the game printed for the call
+        private RuntimeException failure; // what the game threw for the call, null if nothing
+
+        Slot(int index) {
+            this.turn = index;
+            this.published = -1;
+            this.completed = -1;
+            this.output = new StringBuilder(128);
+        }
+    }
+}
@@ -0,0 +1,549 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the calls that change a GameManager, so a game can be rebuilt after a crash from its
+ * last checkpoint, saved as a WorldFile, and the calls journaled since.
+ *
+ * Every call is appended as a record before the game applies it. Records are gathered in memory and written with
+ * a single fsync per batch (group commit): a background thread commits whatever is pending at a fixed interval, and
+ * commit() forces it at once. Until then a record may be lost in a crash, so the interval bounds how much of the
+ * game a crash can take away.
+ *
+ * The file starts with a header, an int magic "QRTJ" and the long generation of the journal, followed by the
+ * records. A record is an int payload length, the CRC32 of the payload, then the payload: an operation code
+ * followed by its arguments. Rooms are named, items and players are written out in full, in the encoding of WorldFile.
+ * Recovery stops at the first record that is cut short or fails its checksum, which is where the crash happened,
+ * and cuts the journal there.
+ *
+ * A checkpoint remembers the generation of the journal whose records it holds, and emptying the journal after the
+ * checkpoint moves the journal on to the next generation. Recovery replays the records only if the journal is of a
+ * later generation than the checkpoint, so a crash between saving a checkpoint and emptying the journal does not
+ * apply the same records twice.
+ */
+public class GameJournal implements Closeable {
+    private static final byte ADD_PLAYER = 1;
+    private static final byte ADD_ROOM = 2;
+    private static final byte ADD_ITEM = 3;
+    private static final byte REMOVE_PLAYER = 4;
+    private static final byte REMOVE_ROOM = 5;
+    private static final byte START_PLAYER = 6;
+    private static final byte MOVE_PLAYER = 7;
+    private static final byte PICK_UP_ITEM = 8;
+    private static final byte DROP_ITEM = 9;
+    private static final byte DISASSEMBLE_ITEM = 10;
+    private static final byte SOLVE_PUZZLE = 11;
+    private static final byte ACTIVATE_PUZZLE = 12;
+    private static final byte DEACTIVATE_PUZZLE = 13;
+    private static final byte USE_ITEM = 14;
+
+    private static final int MAGIC = 0x5152544A; // "QRTJ"
+    private static final int FILE_HEADER = Integer.BYTES + Long.BYTES; // magic and generation
+    private static final int HEADER = 8; // payload length and checksum of a record
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Object lock; // guards everything below
+    private long generation; // generation written in the header of the file
+    private ByteArrayOutputStream pending; // records appended but not written yet
+    private long appended; // number of the last record appended
+    private long durable; // number of the last record written and forced to disk
+    private boolean committing; // true while a thread writes a batch
+    private final ScheduledExecutorService committer;
+    private final ByteArrayOutputStream record; // encodes one record at a time, under the lock
+    private final DataOutputStream recordOut;
+
+    /**
+     * Opens a journal for appending, creating the file if needed. A new file starts at generation 1, so a journal
+     * meant to go on from an existing checkpoint must first go through recover, which moves it past the checkpoint.
+     *
+     * @param path                 The journal file.
+     * @param commitIntervalMillis The longest time a record waits before it is committed, 0 to commit only on demand.
+     * @throws IOException if the file cannot be opened.
+     * throws InvalidWorldFile if the file is not a journal.
+     */
+    public GameJournal(Path path, long commitIntervalMillis) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.generation = readGeneration(this.channel, path, 1);
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+        this.channel.position(this.channel.size());
+        this.lock = new Object();
+        this.pending = new ByteArrayOutputStream(1 << 16);
+        this.appended = 0;
+        this.durable = 0;
+        this.committing = false;
+        this.record = new ByteArrayOutputStream(256);
+        this.recordOut = new DataOutputStream(this.record);
+        if (commitIntervalMillis > 0) {
+            this.committer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "journal-committer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.committer.scheduleWithFixedDelay(this::commitQuietly, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.committer = null;
+        }
+    }
+
+    /**
+     * Rebuilds a game from its last checkpoint and its journal. What the replayed calls print is dropped, and only
+     * on the recovering thread: it is captured through the SessionConsole, so sessions printing meanwhile are not
+     * affected.
+     * The journal is cut after its last whole record, or emptied if the checkpoint already holds its records, and
+     * created if it does not exist, so it can be opened again to go on appending.
+     *
+     * @param checkpoint The WorldFile of the last checkpoint, or a file that does not exist to start from an empty game.
+     * @param journal    The journal written since that checkpoint, it may not exist.
+     * Returns The recovered game.
+     * @throws IOException if a file cannot be read.
+     */
+    public static GameManager recover(Path checkpoint, Path journal) throws IOException {
+        GameManager game = Files.exists(checkpoint) ? WorldFile.load(checkpoint) : new GameManager();
+        long checkpointGeneration = Files.exists(checkpoint) ? WorldFile.readJournalGeneration(checkpoint) : 0;
+        SessionConsole console = SessionConsole.install();
+        StringBuilder previous = console.getCapture();
+        StringBuilder replayed = new StringBuilder(256); // what a replayed call printed, dropped after each record
+        console.capture(replayed);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long generation = readGeneration(channel, journal, checkpointGeneration + 1);
+            if (generation <= checkpointGeneration) {
+                // Emptying the journal after the checkpoint was cut short, the checkpoint holds every record
+                channel.truncate(FILE_HEADER);
+                channel.force(true);
+                writeGeneration(channel, checkpointGeneration + 1);
+                return game;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(FILE_HEADER);
+            long valid = FILE_HEADER;
+            CRC32 checksum = new CRC32();
+            while (buffer.remaining() >= HEADER) {
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                valid = buffer.position();
+                try {
+                    replay(game, payload);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException | InvalidWorldFile e) {
+                    throw new InvalidWorldFile("Record at offset " + (valid - length - HEADER) + " of " + journal + " cannot be read.", e);
+                } catch (RuntimeException e) {
+                    // The call failed the same way when it was first made, after its record was appended
+                }
+                replayed.setLength(0);
+            }
+            if (valid < channel.size()) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        } finally {
+            console.capture(previous);
+            SessionConsole.release(console);
+        }
+        return game;
+    }
+
+    /**
+     * Reads the generation in the header of a journal, writing a header with the given generation first if the
+     * file holds no whole header, which is the case of a new file or of one whose header a crash cut short.
+     *
+     * @param fresh The generation of a journal without a header.
+     * Returns The generation of the journal.
+     * throws InvalidWorldFile if the file is not a journal.
+     */
+    private static long readGeneration(FileChannel channel, Path path, long fresh) throws IOException {
+        if (channel.size() < FILE_HEADER) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putLong(fresh).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            return fresh;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        while (header.hasRemaining()) {
+            channel.read(header, header.position());
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new InvalidWorldFile(path + " is not a journal.");
+        }
+        return header.getLong();
+    }
+
+    /**
+     * Overwrites the generation in the header of a journal and forces it to disk.
+     */
+    private static void writeGeneration(FileChannel channel, long generation) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(generation).flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, Integer.BYTES + bytes.position());
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Saves a checkpoint of the game and empties the journal, since everything in it is now in the checkpoint.
+     * The game must not change while the checkpoint is taken.
+     *
+     * The checkpoint is written with the generation of the journal, and only once it replaced the last one are the
+     * records cut off the journal and the generation moved on. A crash in between leaves a checkpoint of the same
+     * generation as the journal, whose records recover then skips.
+     *
+     * @param game       The game journaled into this journal.
+     * @param checkpoint The WorldFile to write, replaced only once the new one is complete.
+     * @throws IOException if a file cannot be written.
+     */
+    public void checkpoint(GameManager game, Path checkpoint) throws IOException {
+        commit();
+        long saved;
+        synchronized (this.lock) {
+            saved = this.generation;
+        }
+        Path written = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        WorldFile.save(game, written, saved);
+        try (FileChannel file = FileChannel.open(written, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        Files.move(written, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this.lock) {
+            while (this.committing) {
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the journal.", e);
+                }
+            }
+            // Records first, generation second: a crash in between leaves an empty journal the checkpoint matches
+            this.channel.truncate(FILE_HEADER);
+            this.channel.force(true);
+            writeGeneration(this.channel, saved + 1);
+            this.channel.position(FILE_HEADER);
+            this.generation = saved + 1;
+        }
+    }
+
+    /**
+     * Writes every record appended so far and forces it to disk, together with the records other threads appended
+     * in the meantime. Returns once the records appended before the call are durable.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    public void commit() throws IOException {
+        long target;
+        synchronized (this.lock) {
+            target = this.appended;
+        }
+        commit(target);
+    }
+
+    /**
+     * Waits until the given record is durable, committing a batch if no other thread is doing it already.
+     *
+     * @param target The number of the record.
+     * @throws IOException if the journal cannot be written.
+     */
+    private void commit(long target) throws IOException {
+        while (true) {
+            byte[] batch;
+            long last;
+            synchronized (this.lock) {
+                while (this.committing && this.durable < target) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the journal.", e);
+                    }
+                }
+                if (this.durable >= target) {
+                    return;
+                }
+                this.committing = true;
+                batch = this.pending.toByteArray();
+                this.pending.reset();
+                last = this.appended;
+            }
+            boolean written = false;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    this.channel.write(buffer);
+                }
+                this.channel.force(false);
+                written = true;
+            } finally {
+                synchronized (this.lock) {
+                    this.committing = false;
+                    if (written) {
+                        this.durable = last;
+                    }
+                    this.lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            // The records stay pending and are committed by the next attempt
+        }
+    }
+
+    /**
+     * Commits what is pending, stops the background committer and closes the file.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.committer != null) {
+            this.committer.shutdown();
+        }
+        try {
+            commit();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Retrieves the journal file.
+     *
+     * Returns The path of the journal.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    void addPlayer(Player player) {
+        append(ADD_PLAYER, out -> writePlayer(out, player));
+    }
+
+    void addRoom(Room toInsert, Room target, Direction direction) {
+        append(ADD_ROOM, out -> {
+            WorldFile.writeRoom(out, toInsert);
+            writeRoomReference(out, target);
+            out.writeByte(direction != null ? direction.ordinal() : -1);
+        });
+    }
+
+    void addItem(Room room, Item item) {
+        append(ADD_ITEM, out -> {
+            writeRoomReference(out, room);
+            WorldFile.writeItem(out, item);
+        });
+    }
+
+    void removePlayer(Player player) {
+        append(REMOVE_PLAYER, out -> writePlayer(out, player));
+    }
+
+    void removeRoom(Room room) {
+        append(REMOVE_ROOM, out -> writeRoomReference(out, room));
+    }
+
+    void startPlayer(Room room) {
+        append(START_PLAYER, out -> writeRoomReference(out, room));
+    }
+
+    void movePlayer(Direction direction) {
+        append(MOVE_PLAYER, out -> out.writeByte(direction.ordinal()));
+    }
+
+    void pickUpItem(Item item) {
+        append(PICK_UP_ITEM, out -> WorldFile.writeItem(out, item));
+    }
+
+    void dropItem(Item item) {
+        append(DROP_ITEM, out -> WorldFile.writeItem(out, item));
+    }
+
+    void disassembleItem(Item item) {
+        append(DISASSEMBLE_ITEM, out -> WorldFile.writeItem(out, item));
+    }
+
+    void solvePuzzle() {
+        append(SOLVE_PUZZLE, out -> {
+        });
+    }
+
+    void activatePuzzle(Room room) {
+        append(ACTIVATE_PUZZLE, out -> writeRoomReference(out, room));
+    }
+
+    void deactivatePuzzle(Room room) {
+        append(DEACTIVATE_PUZZLE, out -> writeRoomReference(out, room));
+    }
+
+    void useItem(Item item) {
+        append(USE_ITEM, out -> WorldFile.writeItem(out, item));
+    }
+
+    /**
+     * Encodes a record and adds it to the pending batch.
+     *
+     * @param operation The operation code.
+     * @param arguments Writes the arguments of the operation.
+     */
+    private void append(byte operation, Arguments arguments) {
+        synchronized (this.lock) {
+            try {
+                this.record.reset();
+                this.recordOut.writeByte(operation);
+                arguments.write(this.recordOut);
+                this.recordOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(this.record.toByteArray());
+            DataOutputStream out = new DataOutputStream(this.pending);
+            try {
+                out.writeInt(this.record.size());
+                out.writeInt((int) checksum.getValue());
+                this.record.writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.appended++;
+        }
+    }
+
+    /**
+     * Applies one record to the game.
+     */
+    private static void replay(GameManager game, ByteBuffer in) {
+        byte operation = in.get();
+        switch (operation) {
+            case ADD_PLAYER:
+                game.addPlayer(readPlayer(in));
+                break;
+            case ADD_ROOM: {
+                Room toInsert = WorldFile.readRoom(in);
+                Room target = readRoomReference(game, in);
+                byte direction = in.get();
+                game.addRoom(toInsert, target, direction >= 0 ? Direction.values()[direction] : null);
+                break;
+            }
+            case ADD_ITEM: {
+                Room room = readRoomReference(game, in);
+                game.addItem(room, WorldFile.readItem(in));
+                break;
+            }
+            case REMOVE_PLAYER:
+                Player player = readPlayer(in);
+                game.removePlayer(player.equals(game.getCurrentPlayer()) ? game.getCurrentPlayer() : player);
+                break;
+            case REMOVE_ROOM:
+                game.removeRoom(readRoomReference(game, in));
+                break;
+            case START_PLAYER:
+                game.startPlayer(readRoomReference(game, in));
+                break;
+            case MOVE_PLAYER:
+                game.movePlayer(Direction.values()[in.get()]);
+                break;
+            case PICK_UP_ITEM:
+                game.pickUpItem(WorldFile.readItem(in));
+                break;
+            case DROP_ITEM:
+                game.dropItem(WorldFile.readItem(in));
+                break;
+            case DISASSEMBLE_ITEM:
+                game.disassembleItem(WorldFile.readItem(in));
+                break;
+            case SOLVE_PUZZLE:
+                game.solvePuzzle();
+                break;
+            case ACTIVATE_PUZZLE:
+                game.activatePuzzle(readRoomReference(game, in));
+                break;
+            case DEACTIVATE_PUZZLE:
+                game.deactivatePuzzle(readRoomReference(game, in));
+                break;
+            case USE_ITEM:
+                game.useItem(WorldFile.readItem(in));
+                break;
+            default:
+                throw new InvalidWorldFile("Unknown journal operation " + operation + ".");
+        }
+    }
+
+    private static void writeRoomReference(DataOutputStream out, Room room) throws IOException {
+        out.writeBoolean(room != null);
+        if (room != null) {
+            out.writeLong(room.getId());
+            WorldFile.writeString(out, room.getName());
+        }
+    }
+
+    /**
+     * Reads the id and name of a room and finds the room of the game with that id.
+     *
+     * Returns The room of the game, a new room with that id and name if the game has none, or null.
+     */
+    private static Room readRoomReference(GameManager game, ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        long id = in.getLong();
+        Room named = new Room(WorldFile.readString(in), id);
+        QuartNode<Room> node = game.getRooms().getNode(named);
+        return node != null ? node.getValue() : named;
+    }
+
+    private static void writePlayer(DataOutputStream out, Player player) throws IOException {
+        WorldFile.writeString(out, player.getName());
+        out.writeInt(player.getMaxItems());
+        out.writeBoolean(player.getBag() != null);
+        if (player.getBag() != null) {
+            WorldFile.writeItem(out, player.getBag());
+        }
+    }
+
+    private static Player readPlayer(ByteBuffer in) {
+        Player player = new Player(WorldFile.readString(in), in.getInt());
+        player.setBag(in.get() != 0 ? (Bag) WorldFile.readItem(in) : null);
+        return player;
+    }
+
+    /**
+     * Writes the arguments of one operation.
+     */
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
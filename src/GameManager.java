@@ -1,9 +1,21 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * GameManager class manages the game environment, including players, rooms, items, and interactions.
  */
 public class GameManager implements Cloneable {
-    private QuartlyLinkedList<Room> rooms; // linked list to store the rooms in the game environment
+    private QuartlyList<Room> rooms; // linked list to store the rooms in the game environment
     private Player currentPlayer; // Current player in the game
+    private PersistentLongMap<RoomState> version; // State of every room as of the last snapshot, null to rebuild it
+    private ArrayList<Room> dirty; // Rooms whose contents changed since version was brought up to date
+    private ArrayList<Room> relinked; // Rooms that joined or left the game or whose exits changed since then
+    private RoomListener roomListener; // Marks every change of a room of this game as dirty
+    private RoomListener borrower; // Copies a room shared with another game before that room changes
+    private GameJournal journal; // Journal every change is appended to before it is applied, null for none
 
     /**
      * Constructor for GameManager class.
@@ -12,6 +24,27 @@ public class GameManager implements Cloneable {
     GameManager() {
         this.currentPlayer = null;
         this.rooms = new QuartlyLinkedList<>();
+        this.version = PersistentLongMap.empty();
+        this.dirty = new ArrayList<>();
+        this.relinked = new ArrayList<>();
+        this.roomListener = this::markDirty;
+        this.borrower = this::detachRoom;
+    }
+
+    /**
+     * Constructs a GameManager around rooms that were already built, for instance by a WorldBuilder.
+     * Nothing is printed. Any QuartlyList backend will do, so an empty CompactQuartlyLinkedList gives a game that
+     * keeps its rooms in flat arrays.
+     * The version is left to the first snapshot, so a game that is loaded and played without ever being saved
+     * never pays for it.
+     *
+     * @param rooms The rooms of the new game.
+     */
+    GameManager(QuartlyList<Room> rooms) {
+        this();
+        this.rooms = rooms;
+        this.version = null;
+        rooms.stream().forEach(node -> node.getValue().setListener(this.roomListener));
     }
 
     /**
@@ -20,6 +53,9 @@ public class GameManager implements Cloneable {
      * @param player The player to be added.
      */
     public void addPlayer(Player player) {
+        if (this.journal != null) {
+            this.journal.addPlayer(player);
+        }
         if (this.currentPlayer == null) {
             currentPlayer = player;
             System.out.println(player.getName() + " was added to the game.");
@@ -37,11 +73,16 @@ public class GameManager implements Cloneable {
      * throw execptions if it is not possible to add the room
      */
     public void addRoom(Room toInsert, Room target, Direction direction) {
+        if (this.journal != null) {
+            this.journal.addRoom(toInsert, target, direction);
+        }
         if (this.rooms.isExist(toInsert)) {
             System.out.println("Could not add " + toInsert.getName() + " to the game.");
         } else {
             try {
                 this.rooms.add(toInsert, target, direction);
+                toInsert.setListener(this.roomListener);
+                markRelinked(toInsert);
                 if (target != null)
                     System.out.println(toInsert.getName() + " was added and is connected to " + target.getName() + " from the " + Room.getDirectionString(direction) + " exit.");
                 else
@@ -54,6 +95,202 @@ public class GameManager implements Cloneable {
         }
     }
 
+    /**
+     * Marks a room whose items, puzzle or key changed, so that the next snapshot takes its state.
+     * Nothing else happens while the room changes, and nothing at all while the version is to be rebuilt anyway.
+     *
+     * @param room The room that changed.
+     */
+    private void markDirty(Room room) {
+        if (this.version != null) {
+            this.dirty.add(room);
+            dropVersionIfStale();
+        }
+    }
+
+    /**
+     * Marks a room that joined the game, or whose exits changed, together with the rooms linked to it.
+     *
+     * @param room The room whose links changed.
+     */
+    private void markRelinked(Room room) {
+        if (this.version != null) {
+            this.relinked.add(room);
+            this.relinked.addAll(neighborsOf(room));
+            dropVersionIfStale();
+        }
+    }
+
+    /**
+     * Gives up the version once more rooms were marked than the game holds, since rebuilding it at the next
+     * snapshot then costs less than catching up, and the marks of a game that is never snapshotted again stop
+     * piling up.
+     */
+    private void dropVersionIfStale() {
+        if (this.dirty.size() + this.relinked.size() > this.rooms.size() + 64) {
+            this.version = null;
+            this.dirty.clear();
+            this.relinked.clear();
+        }
+    }
+
+    /**
+     * Builds the version from scratch, taking the state of every room of the game.
+     *
+     * Returns The version.
+     */
+    private PersistentLongMap<RoomState> buildVersion() {
+        @SuppressWarnings("unchecked")
+        QuartNode<Room>[] nodes = this.rooms.stream().toArray(QuartNode[]::new);
+        long[] ids = new long[nodes.length];
+        RoomState[] states = new RoomState[nodes.length];
+        int count = 0;
+        for (QuartNode<Room> node : nodes) {
+            ids[count] = node.getValue().getId();
+            states[count++] = RoomState.of(node.getValue(), node);
+        }
+        return PersistentLongMap.of(ids, states, count);
+    }
+
+    /**
+     * Brings the version up to date, rebuilding it if it was given up and otherwise taking the state of every
+     * room marked since. A room whose generation is still the one its recorded state holds did not change since,
+     * so a room marked dirty several times is only taken once; relinked rooms are always taken, since their exits
+     * changed without moving their generation.
+     */
+    private void settleVersion() {
+        if (this.version == null) {
+            this.version = buildVersion();
+            return;
+        }
+        for (Room room : this.relinked) {
+            recordRoom(room, true);
+        }
+        for (Room room : this.dirty) {
+            recordRoom(room, false);
+        }
+        this.relinked.clear();
+        this.dirty.clear();
+    }
+
+    /**
+     * Stores the current state of a marked room into the version, or drops it if the room left the game.
+     * The state is taken from the instance the game holds, which is a private copy of the marked one when the
+     * room was shared with another game.
+     *
+     * @param room     The marked room.
+     * @param relinked true to take the state even if the generation of the room did not move.
+     */
+    private void recordRoom(Room room, boolean relinked) {
+        QuartNode<Room> node = this.rooms.getNode(room);
+        if (node == null) {
+            this.version = this.version.remove(room.getId());
+            return;
+        }
+        Room own = node.getValue();
+        RoomState recorded = relinked ? null : this.version.get(own.getId());
+        if (recorded == null || recorded.getGeneration() != own.getGeneration()) {
+            this.version = this.version.put(own.getId(), RoomState.of(own, node));
+        }
+    }
+
+    /**
+     * Retrieves the rooms linked to a room of the game.
+     *
+     * @param room The room.
+     * Returns The linked rooms, empty if the room is not in the game.
+     */
+    private List<Room> neighborsOf(Room room) {
+        List<Room> neighbors = new ArrayList<>(4);
+        QuartNode<Room> node = this.rooms.getNode(room);
+        if (node != null) {
+            for (Direction direction : Direction.values()) {
+                QuartNode<Room> neighbor = node.getNeighbor(direction);
+                if (neighbor != null && neighbor.getValue() != null) {
+                    neighbors.add(neighbor.getValue());
+                }
+            }
+        }
+        return neighbors;
+    }
+
+    /**
+     * Takes an immutable snapshot of the game.
+     * Changing a room only marks it, so the snapshot takes the states of the rooms marked since the last one and
+     * otherwise shares the previous version, costing time in the number of changes rather than of rooms.
+     *
+     * Returns The snapshot.
+     */
+    public WorldSnapshot snapshot() {
+        settleVersion();
+        QuartNode<Room> root = this.rooms.getRoot();
+        long rootId = root != null && root.getValue() != null ? root.getValue().getId() : 0;
+        return new WorldSnapshot(this.version, rootId, this.currentPlayer);
+    }
+
+    /**
+     * Builds a new game from a snapshot. Only the rooms connected to the first room are restored.
+     *
+     * @param snapshot The snapshot to restore.
+     * Returns A new game holding copies of the rooms and the player of the snapshot.
+     */
+    public static GameManager fromSnapshot(WorldSnapshot snapshot) {
+        GameManager game = new GameManager();
+        RoomState rootState = snapshot.getRoom(snapshot.getRootId());
+        if (rootState != null) {
+            Map<Long, Room> restored = new HashMap<>();
+            ArrayDeque<RoomState> queue = new ArrayDeque<>();
+            restored.put(rootState.getId(), game.restoreRoom(rootState, null, null));
+            queue.add(rootState);
+            while (!queue.isEmpty()) {
+                RoomState state = queue.poll();
+                for (Direction direction : Direction.values()) {
+                    RoomState neighbor = snapshot.getRoom(state.getNeighborId(direction));
+                    if (neighbor != null && !restored.containsKey(neighbor.getId())) {
+                        restored.put(neighbor.getId(), game.restoreRoom(neighbor, restored.get(state.getId()), direction));
+                        queue.add(neighbor);
+                    }
+                }
+            }
+        }
+        Player player = snapshot.toPlayer();
+        if (player != null) {
+            RoomState playerRoom = snapshot.getRoom(snapshot.getPlayerRoomId());
+            game.placePlayer(player, playerRoom != null ? playerRoom.toRoom() : null);
+        }
+        return game;
+    }
+
+    /**
+     * Puts a restored player into the game, standing in a room of the game, without printing anything.
+     *
+     * @param player The player.
+     * @param room   The room the player stands in, or null if the player has not started.
+     */
+    void placePlayer(Player player, Room room) {
+        this.currentPlayer = player;
+        QuartNode<Room> node = room != null ? this.rooms.getNode(room) : null;
+        if (node != null) {
+            player.movePlayer(node.getValue());
+            player.setCurrentNode(node);
+        }
+    }
+
+    /**
+     * Adds a room rebuilt from its state next to an already restored room, without printing anything.
+     *
+     * @param state     The state of the room.
+     * @param target    The restored room to connect to, or null for the first room.
+     * @param direction The direction of target in which the room is placed.
+     * Returns The restored room.
+     */
+    private Room restoreRoom(RoomState state, Room target, Direction direction) {
+        Room room = state.toRoom();
+        this.rooms.add(room, target, direction);
+        room.setListener(this.roomListener);
+        markRelinked(room);
+        return room;
+    }
 
     /**
      * Adds an item to a specific room in the game environment.
@@ -62,9 +299,12 @@ public class GameManager implements Cloneable {
      * @param item The item to be added.
      */
     public void addItem(Room room, Item item) {
+        if (this.journal != null) {
+            this.journal.addItem(room, item);
+        }
         boolean roomExist = this.rooms.isExist(room);
         if (roomExist) {
-            boolean addedItem = room.addItem(item);
+            boolean addedItem = ownRoom(room).addItem(item);
             if (addedItem) {
                 System.out.println(item.getName() + " was added to the game.");
             } else
@@ -86,6 +326,9 @@ public class GameManager implements Cloneable {
         if (player == null) {
             return;
         }
+        if (this.journal != null) {
+            this.journal.removePlayer(player);
+        }
         if (this.currentPlayer.equals(player)) {
             player.resetPlayer();
             String playerName = player.getName();
@@ -103,8 +346,19 @@ public class GameManager implements Cloneable {
      * Returns true if the room was successfully removed, false otherwise.
      */
     public void removeRoom(Room room) {
+        if (this.journal != null) {
+            this.journal.removeRoom(room);
+        }
         try {
+            room = ownRoom(room);
+            List<Room> neighbors = neighborsOf(room);
             this.rooms.remove(room);
+            room.setListener(null);
+            if (this.version != null) {
+                this.relinked.add(room);
+                this.relinked.addAll(neighbors);
+                dropVersionIfStale();
+            }
             System.out.println(room.getName() + " was removed from the game.");
             room.reset();
         } catch (NoSuchElement e) { // Corrected catch block
@@ -121,7 +375,13 @@ public class GameManager implements Cloneable {
      * @param room The room where the player starts.
      */
     public void startPlayer(Room room) {
+        if (this.journal != null) {
+            this.journal.startPlayer(room);
+        }
         this.currentPlayer.startPlayer(room);
+        if (this.currentPlayer.getCurrentRoom() == room) {
+            this.currentPlayer.setCurrentNode(this.rooms.getNode(room));
+        }
     }
 
     /**
@@ -130,6 +390,9 @@ public class GameManager implements Cloneable {
      * @param direction The direction in which the player moves.
      */
     public void movePlayer(Direction direction) {
+        if (this.journal != null) {
+            this.journal.movePlayer(direction);
+        }
         this.currentPlayer.movePlayer(this.rooms,direction);
     }
 
@@ -139,7 +402,10 @@ public class GameManager implements Cloneable {
      * @param item The item to be picked up.
      */
     public void pickUpItem(Item item) {
-
+        if (this.journal != null) {
+            this.journal.pickUpItem(item);
+        }
+        ownCurrentRoom();
         this.currentPlayer.pickUpItem(item);
 
     }
@@ -150,7 +416,10 @@ public class GameManager implements Cloneable {
      * @param item The item to be dropped.
      */
     public void dropItem(Item item) {
-
+        if (this.journal != null) {
+            this.journal.dropItem(item);
+        }
+        ownCurrentRoom();
         this.currentPlayer.dropItem(item);
 
     }
@@ -161,7 +430,10 @@ public class GameManager implements Cloneable {
      * @param item The item to be disassembled.
      */
     public void disassembleItem(Item item) {
-
+        if (this.journal != null) {
+            this.journal.disassembleItem(item);
+        }
+        ownCurrentRoom();
         this.currentPlayer.disassembleItem(item);
 
     }
@@ -170,6 +442,10 @@ public class GameManager implements Cloneable {
      * Solves the puzzle in the current room.
      */
     public void solvePuzzle() {
+        if (this.journal != null) {
+            this.journal.solvePuzzle();
+        }
+        ownCurrentRoom();
         this.currentPlayer.solvePuzzle();
     }
 
@@ -179,7 +455,10 @@ public class GameManager implements Cloneable {
      * @param room The room where the puzzle is to be activated.
      */
     public void activatePuzzle(Room room) {
-        room.activatePuzzle();
+        if (this.journal != null) {
+            this.journal.activatePuzzle(room);
+        }
+        ownRoom(room).activatePuzzle();
     }
 
     /**
@@ -188,7 +467,10 @@ public class GameManager implements Cloneable {
      * @param room The room where the puzzle is to be deactivated.
      */
     public void deactivatePuzzle(Room room) {
-        room.deactivatePuzzle();
+        if (this.journal != null) {
+            this.journal.deactivatePuzzle(room);
+        }
+        ownRoom(room).deactivatePuzzle();
     }
 
 
@@ -199,6 +481,10 @@ public class GameManager implements Cloneable {
      * @param item - the item which the player will use
      */
     public void useItem(Item item) {
+        if (this.journal != null) {
+            this.journal.useItem(item);
+        }
+        ownCurrentRoom();
         item.useItem(this.currentPlayer);
     }
 
@@ -210,11 +496,56 @@ public class GameManager implements Cloneable {
     @Override
     public GameManager clone()  {
         try {
+            if (this.version != null) {
+                // The versions are immutable, so the clone starts from the same one once it holds every change
+                settleVersion();
+            }
             GameManager clonedManager = (GameManager) super.clone();
+            clonedManager.journal = null;
+            clonedManager.dirty = new ArrayList<>();
+            clonedManager.relinked = new ArrayList<>();
+            clonedManager.roomListener = clonedManager::markDirty;
+            clonedManager.borrower = clonedManager::detachRoom;
             if (this.rooms != null) {
                 clonedManager.rooms = this.rooms.clone();
-            }if(currentPlayer!=null) {
+                // Streamed rather than iterated, so the rooms a removal cut off from the root are taken too
+                clonedManager.rooms.stream().forEach(node -> node.getValue().setListener(clonedManager.roomListener));
+            }
+            if(currentPlayer!=null) {
+                clonedManager.currentPlayer = currentPlayer.clone();
+                relocatePlayer(clonedManager);
+            }
+            return clonedManager;
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Clones the GameManager lazily. The clone has its own layout and player but shares every room, and its items,
+     * with this game. A shared room is copied only the first time either game changes it, so a clone that is
+     * only read, or changes a few rooms, costs little more than its layout.
+     *
+     * @return A copy of the GameManager sharing the rooms of this game until they change.
+     */
+    public GameManager lazyClone() {
+        try {
+            if (this.version != null) {
+                settleVersion();
+            }
+            GameManager clonedManager = (GameManager) super.clone();
+            clonedManager.journal = null;
+            clonedManager.dirty = new ArrayList<>();
+            clonedManager.relinked = new ArrayList<>();
+            clonedManager.roomListener = clonedManager::markDirty;
+            clonedManager.borrower = clonedManager::detachRoom;
+            if (this.rooms != null) {
+                clonedManager.rooms = this.rooms.cloneSharingValues();
+                clonedManager.rooms.stream().forEach(node -> node.getValue().lend(clonedManager.borrower));
+            }
+            if (currentPlayer != null) {
                 clonedManager.currentPlayer = currentPlayer.clone();
+                relocatePlayer(clonedManager);
             }
             return clonedManager;
         } catch (CloneNotSupportedException e) {
@@ -222,7 +553,141 @@ public class GameManager implements Cloneable {
         }
     }
 
-    public QuartlyLinkedList<Room> getRooms(){
+    /**
+     * Retrieves the instance of a room that belongs to this game, copying it first if it is still shared with
+     * the game this one was lazily cloned from.
+     *
+     * @param room The room, possibly an instance held by another game.
+     * Returns The instance held by this game, or the given room if it is not in the game.
+     */
+    private Room ownRoom(Room room) {
+        QuartNode<Room> node = this.rooms.getNode(room);
+        if (node == null) {
+            return room;
+        }
+        if (node.getValue().isLentTo(this.borrower)) {
+            node.getValue().giveBack(this.borrower);
+            detachRoom(node.getValue());
+        }
+        return node.getValue();
+    }
+
+    /**
+     * Makes sure the room the player stands in belongs to this game before the player changes it.
+     */
+    private void ownCurrentRoom() {
+        if (this.currentPlayer != null && this.currentPlayer.getCurrentRoom() != null) {
+            Room room = ownRoom(this.currentPlayer.getCurrentRoom());
+            if (room != this.currentPlayer.getCurrentRoom()) {
+                this.currentPlayer.movePlayer(room);
+            }
+        }
+    }
+
+    /**
+     * Replaces a room shared with another game by a private copy, taken before the room changes.
+     *
+     * @param shared The shared room, still unchanged.
+     */
+    private void detachRoom(Room shared) {
+        Room copy = shared.clone();
+        if (!this.rooms.replaceValue(shared, copy)) {
+            return;
+        }
+        copy.setListener(this.roomListener);
+        if (this.currentPlayer != null && this.currentPlayer.getCurrentRoom() == shared) {
+            this.currentPlayer.movePlayer(copy);
+        }
+    }
+
+    /**
+     * Moves the cloned player onto the matching room of the cloned world and points its cursor there.
+     *
+     * @param clonedManager The clone whose player is relocated.
+     */
+    private void relocatePlayer(GameManager clonedManager) {
+        Room room = clonedManager.currentPlayer.getCurrentRoom();
+        if (room == null || clonedManager.rooms == null) {
+            return;
+        }
+        QuartNode<Room> node = clonedManager.rooms.getNode(room);
+        if (node != null) {
+            clonedManager.currentPlayer.movePlayer(node.getValue());
+            clonedManager.currentPlayer.setCurrentNode(node);
+        }
+    }
+
+    /**
+     * Sets the journal every change of the game is appended to, before the change is applied.
+     * Clones of the game are not journaled.
+     *
+     * @param journal The journal, or null to stop journaling.
+     */
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Finds a shortest way from one room to another.
+     * Like a moving player, the way never leaves a room whose puzzle is active.
+     *
+     * @param from The room to start from.
+     * @param to   The room to reach.
+     * Returns The exits to take in order, or null if there is no way or a room is not in the game.
+     */
+    public List<Direction> findPath(Room from, Room to) {
+        try {
+            return this.rooms.findPath(from, to, room -> !room.getRiddle());
+        } catch (NoSuchElement e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a room is still connected to the room the player stands in, or to the first room of the game
+     * when the player has not started.
+     *
+     * @param room The room to check.
+     * Returns true if a path of exits joins the two rooms, false otherwise.
+     */
+    public boolean isReachable(Room room) {
+        if (this.currentPlayer != null && this.currentPlayer.getCurrentRoom() != null) {
+            return this.rooms.isConnected(this.currentPlayer.getCurrentRoom(), room);
+        }
+        return this.rooms.isReachable(room);
+    }
+
+    /**
+     * Sums the value of the items lying in every room of the game, using all cores.
+     *
+     * Returns The total value of the items in the rooms.
+     */
+    public long totalItemValue() {
+        return this.rooms.parallelReduce(0L, room -> (long) room.sumOfItems(), Long::sum);
+    }
+
+    /**
+     * Counts the rooms of the game with an active puzzle, using all cores.
+     *
+     * Returns The number of rooms with an active puzzle.
+     */
+    public int countActivePuzzles() {
+        return this.rooms.parallelReduce(0, room -> room.getRiddle() ? 1 : 0, Integer::sum);
+    }
+
+    /**
+     * Retrieves the room occupying the given cell of the map.
+     *
+     * @param x The x coordinate, growing to the east of the first room.
+     * @param y The y coordinate, growing to the north of the first room.
+     * Returns The room in that cell, or null if the cell is empty.
+     */
+    public Room getRoomAt(int x, int y) {
+        QuartNode<Room> node = this.rooms.getNodeAt(x, y);
+        return node != null ? node.getValue() : null;
+    }
+
+    public QuartlyList<Room> getRooms(){
         return this.rooms;
     }
 
@@ -0,0 +1,303 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a MultiPlayerGameManager to text clients over a local TCP or Unix domain socket.
+ *
+ * Every connection is a session run by a thread of its own, a virtual thread when the runtime has them and a
+ * platform thread otherwise, so a session simply blocks on its socket. A client joins with a name and then sends
+ * one command per line:
+ * <pre>
+ * join NAME          take part as a new player, standing in the first room
+ * move DIRECTION     north, east, south or west
+ * pick [up] ITEM     pick up an item lying in the room
+ * drop ITEM          drop an item of the bag
+ * use ITEM           use an item of the bag or of the room
+ * solve              solve the puzzle of the room
+ * look               describe the room
+ * quit               leave the game and close the connection
+ * </pre>
+ * The server answers every command with what the game printed for it followed by an empty line. The answer is
+ * gathered in memory and written with a single flush, whatever the number of lines.
+ */
+public class GameServer implements Closeable {
+    private static final int MAX_ITEMS = 5; // Bag size of the players joining
+
+    private final MultiPlayerGameManager game;
+    private final Room start;
+    private final SocketAddress address;
+    private final ServerSocketChannel server;
+    private final ExecutorService sessions;
+    private final Set<SocketChannel> connections;
+    private final SessionConsole console;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Opens a server and starts accepting connections.
+     *
+     * @param game    The game to serve.
+     * @param start   The room players start in.
+     * @param address An InetSocketAddress, port 0 for any free port, or a UnixDomainSocketAddress.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GameServer(MultiPlayerGameManager game, Room start, SocketAddress address) throws IOException {
+        this.game = game;
+        this.start = start;
+        this.address = address;
+        this.server = address instanceof UnixDomainSocketAddress ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        this.server.bind(address, 1024);
+        this.sessions = newSessionExecutor();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.console = SessionConsole.install();
+        this.closed = false;
+        this.acceptor = new Thread(this::accept, "game-server-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Creates the executor running one session per task: a virtual thread per task on runtimes that have them,
+     * otherwise a cached pool of daemon platform threads.
+     */
+    private static ExecutorService newSessionExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invokeExact();
+        } catch (Throwable e) {
+            // Not on this runtime, or only as a preview
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "game-session", 256 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Returns the address the server is bound to, with the actual port if it was bound to port 0.
+     *
+     * @throws IOException if the server is closed.
+     */
+    public SocketAddress getAddress() throws IOException {
+        return this.server.getLocalAddress();
+    }
+
+    private void accept() {
+        while (!this.closed) {
+            try {
+                SocketChannel connection = this.server.accept();
+                this.connections.add(connection);
+                this.sessions.execute(() -> serve(connection));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!this.closed) {
+                    this.console.getConsole().println("Could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a session until the client quits or goes away.
+     */
+    private void serve(SocketChannel connection) {
+        Player player = null;
+        StringBuilder answer = new StringBuilder(256);
+        try (connection) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+            String line;
+            this.console.capture(answer);
+            while ((line = in.readLine()) != null) {
+                answer.setLength(0);
+                boolean quit = false;
+                try {
+                    String[] words = line.trim().split("\\s+", 2);
+                    String verb = words[0].toLowerCase(Locale.ROOT);
+                    String argument = words.length > 1 ? words[1].trim() : "";
+                    if (verb.equals("quit")) {
+                        quit = true;
+                        answer.append("Goodbye.\n");
+                    } else if (verb.equals("join")) {
+                        player = join(player, argument);
+                    } else if (player == null) {
+                        answer.append("Join the game first.\n");
+                    } else {
+                        run(player, verb, argument);
+                    }
+                } catch (RuntimeException e) {
+                    answer.append("Could not ").append(line.trim()).append(".\n");
+                }
+                answer.append('\n');
+                write(connection, answer);
+                if (quit) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away, its player leaves below
+        } finally {
+            this.console.capture(null);
+            this.connections.remove(connection);
+            if (player != null) {
+                this.console.capture(answer);
+                this.game.removePlayer(player);
+                this.console.capture(null);
+            }
+        }
+    }
+
+    /**
+     * Writes an answer with a single write and flush.
+     */
+    private static void write(SocketChannel connection, StringBuilder answer) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(answer));
+        while (bytes.hasRemaining()) {
+            connection.write(bytes);
+        }
+    }
+
+    private Player join(Player current, String name) {
+        if (current != null) {
+            System.out.println(current.getName() + " has already joined.");
+            return current;
+        }
+        if (name.isEmpty()) {
+            System.out.println("Give a name to join.");
+            return null;
+        }
+        Player player = new Player(name, MAX_ITEMS);
+        this.game.addPlayer(player);
+        if (this.game.getPlayer(name) != player) {
+            return null;
+        }
+        this.game.startPlayer(player, this.start);
+        return player;
+    }
+
+    /**
+     * Runs a command of a player who joined.
+     */
+    private void run(Player player, String verb, String argument) {
+        switch (verb) {
+            case "move":
+                Direction direction = parseDirection(argument);
+                if (direction == null) {
+                    System.out.println(argument + " is not a direction.");
+                } else {
+                    this.game.movePlayer(player, direction);
+                }
+                break;
+            case "pick":
+                String name = argument.toLowerCase(Locale.ROOT).startsWith("up ") ? argument.substring(3).trim() : argument;
+                Item lying = this.game.findItem(player, name);
+                if (lying == null) {
+                    System.out.println(name + " is not in " + roomName(player) + ".");
+                } else {
+                    this.game.pickUpItem(player, lying);
+                }
+                break;
+            case "drop":
+                Item carried = find(player.getBag() != null ? player.getBag().items : null, argument);
+                if (carried == null) {
+                    System.out.println(argument + " is not in " + player.getName() + "'s inventory.");
+                } else {
+                    this.game.dropItem(player, carried);
+                }
+                break;
+            case "use":
+                Item item = find(player.getBag() != null ? player.getBag().items : null, argument);
+                if (item == null) {
+                    item = this.game.findItem(player, argument);
+                }
+                if (item == null) {
+                    System.out.println(argument + " is not near " + player.getName() + ".");
+                } else {
+                    this.game.useItem(player, item);
+                }
+                break;
+            case "solve":
+                this.game.solvePuzzle(player);
+                break;
+            case "look":
+                this.game.look(player);
+                break;
+            default:
+                System.out.println("Unknown command " + verb + ".");
+        }
+    }
+
+    private static String roomName(Player player) {
+        return player.getCurrentRoom() != null ? player.getCurrentRoom().getName() : "the room";
+    }
+
+    private static Item find(Item[] items, String name) {
+        if (items != null) {
+            for (Item item : items) {
+                if (item != null && item.getName().equalsIgnoreCase(name)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Direction parseDirection(String word) {
+        for (Direction direction : Direction.values()) {
+            if (Room.getDirectionString(direction).equalsIgnoreCase(word)) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and gives System.out back.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.server.close();
+        for (SocketChannel connection : this.connections) {
+            connection.close();
+        }
+        this.sessions.shutdown();
+        try {
+            this.sessions.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SessionConsole.release(this.console);
+        if (this.address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) this.address).getPath());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock shared by every room, bag and player. Each of them reads it whenever it changes and keeps the reading
+ * as its generation, so an object whose generation is the same as before has not changed since, and two objects
+ * that were never copied from one another never share a generation.
+ */
+final class Generation {
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private Generation() {
+    }
+
+    /**
+     * Reads the clock, moving it forward.
+     *
+     * Returns A generation later than every one handed out before.
+     */
+    static long next() {
+        return CLOCK.incrementAndGet();
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The message a shard of a ShardedWorld sends to another shard when a player walks out through a boundary exit:
+ * the player, and the absolute coordinates of the room it walks into, which the receiving shard owns.
+ *
+ * Within one process the player itself travels. Between processes it is written in the layout a WorldFile uses
+ * for the player,
+ * <pre>
+ * string name, int max items, byte has bag, [item bag], int x, int y
+ * </pre>
+ * and read back as a new player carrying a copy of the bag.
+ */
+final class Handoff {
+    private final Player player;
+    private final int x;
+    private final int y;
+
+    /**
+     * Constructs a handoff.
+     *
+     * @param player The player, no longer touched by the shard handing it off.
+     * @param x      The x coordinate of the room the player walks into.
+     * @param y      The y coordinate of the room the player walks into.
+     */
+    Handoff(Player player, int x, int y) {
+        this.player = player;
+        this.x = x;
+        this.y = y;
+    }
+
+    Player getPlayer() {
+        return this.player;
+    }
+
+    int getX() {
+        return this.x;
+    }
+
+    int getY() {
+        return this.y;
+    }
+
+    /**
+     * Writes the handoff, for a transport between processes.
+     *
+     * @param out The stream to write to.
+     * @throws IOException if the stream fails.
+     */
+    void write(DataOutputStream out) throws IOException {
+        WorldFile.writeString(out, this.player.getName());
+        out.writeInt(this.player.getMaxItems());
+        Bag bag = this.player.getBag();
+        out.writeBoolean(bag != null);
+        if (bag != null) {
+            WorldFile.writeItem(out, bag);
+        }
+        out.writeInt(this.x);
+        out.writeInt(this.y);
+    }
+
+    /**
+     * Reads a handoff written by write.
+     *
+     * @param buffer The bytes of the handoff.
+     * Returns The handoff, with a new player standing nowhere yet.
+     */
+    static Handoff read(ByteBuffer buffer) {
+        Player player = new Player(WorldFile.readString(buffer), buffer.getInt());
+        if (buffer.get() != 0) {
+            player.setBag((Bag) WorldFile.readItem(buffer));
+        } else {
+            player.setBag(null);
+        }
+        return new Handoff(player, buffer.getInt(), buffer.getInt());
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Exception indicating that a world file is damaged or written in a format this version cannot read.
+ */
+public class InvalidWorldFile extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an InvalidWorldFile with no detail message.
+     */
+    public InvalidWorldFile() {
+        super();
+    }
+
+    /**
+     * Constructs an InvalidWorldFile with the specified detail message.
+     *
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method).
+     */
+    public InvalidWorldFile(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs an InvalidWorldFile with the specified detail message and cause.
+     *
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method).
+     * @param cause   the cause (which is saved for later retrieval by the getCause() method).
+     */
+    public InvalidWorldFile(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception indicating that a world layout handed to a WorldBuilder cannot be built.
+ * It carries every conflict found in the layout, not only the first one.
+ */
+public class InvalidWorldLayout extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> conflicts; // One line per conflict, in the order they were found
+
+    /**
+     * Constructs an InvalidWorldLayout with no detail message.
+     */
+    public InvalidWorldLayout() {
+        super();
+        this.conflicts = Collections.emptyList();
+    }
+
+    /**
+     * Constructs an InvalidWorldLayout with the specified detail message.
+     *
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method).
+     */
+    public InvalidWorldLayout(String message) {
+        super(message);
+        this.conflicts = Collections.singletonList(message);
+    }
+
+    /**
+     * Constructs an InvalidWorldLayout with the specified detail message and cause.
+     *
+     * @param message the detail message (which is saved for later retrieval by the getMessage() method).
+     * @param cause   the cause (which is saved for later retrieval by the getCause() method).
+     */
+    public InvalidWorldLayout(String message, Throwable cause) {
+        super(message, cause);
+        this.conflicts = Collections.singletonList(message);
+    }
+
+    /**
+     * Constructs an InvalidWorldLayout listing every conflict of the layout, one per line of the message.
+     *
+     * @param conflicts the conflicts found in the layout.
+     */
+    public InvalidWorldLayout(List<String> conflicts) {
+        super(String.join(System.lineSeparator(), conflicts));
+        this.conflicts = Collections.unmodifiableList(new ArrayList<>(conflicts));
+    }
+
+    /**
+     * Retrieves the conflicts found in the layout.
+     *
+     * @return the conflicts, in the order they were found.
+     */
+    public List<String> getConflicts() {
+        return this.conflicts;
+    }
+}
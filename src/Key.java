@@ -43,6 +43,8 @@ public class Key extends Item implements Cloneable {
      * Implements the useItem method from the Item class.
      * This method specifies how the key item is used by a player.
      * It unlocks the current room if the key is nearby and the current room of the player is currently locked.
+     * The key is taken before the room is unlocked, so when another player picks it up at the same moment only
+     * one of them gets it.
      * @param player The player who is using the key.
      */
     @Override
@@ -51,12 +53,13 @@ public class Key extends Item implements Cloneable {
         boolean unlockedRoom = player.getCurrentRoom().getKeyStatus();
         boolean isNearBy = (player.isItemExist(this)) || (player.getCurrentRoom().isItemExist(this));
         if (!unlockedRoom && isNearBy) {
-            player.getCurrentRoom().unlockRoom(this);
-            System.out.println(player.getName() + " used " + this.getName() + " in " + player.getCurrentRoom().getName() + ".");
-            if (player.isItemExist(this))
-                player.removeItem(this);
-            else if (player.getCurrentRoom().isItemExist(this))
-                player.getCurrentRoom().removeItem(this);
+            boolean taken = player.isItemExist(this) ? player.removeItem(this) : player.getCurrentRoom().removeItem(this);
+            if (taken) {
+                player.getCurrentRoom().unlockRoom(this);
+                System.out.println(player.getName() + " used " + this.getName() + " in " + player.getCurrentRoom().getName() + ".");
+            } else {
+                System.out.println(this.getName() + " is not near " + player.getName() + ".");
+            }
         } else if (unlockedRoom) {
             System.out.println(player.getCurrentRoom().getName() + " was already unlocked.");
         } else {
@@ -42,6 +42,7 @@ public class LargeBag extends Bag implements Cloneable {
         }
         updatedBag[updatedBag.length - 1] = item;
         this.items = updatedBag;
+        this.changed();
         return true;
     }
 
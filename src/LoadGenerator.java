@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Drives a GameServer with simulated players and reports the sustained throughput and the latency of commands
+ * for a series of player counts. Every simulated player has a connection and a thread of its own, and sends its
+ * next command as soon as the answer to the last one arrived, wandering around, looking, and picking up and
+ * dropping relics.
+ *
+ * Usage: java LoadGenerator [--unix] [seconds per run] [player count...]
+ */
+public class LoadGenerator {
+    private static final int SIDE = 32; // The world is a SIDE by SIDE grid of rooms, each holding a relic
+
+    public static void main(String[] args) throws Exception {
+        boolean unix = args.length > 0 && args[0].equals("--unix");
+        int first = unix ? 1 : 0;
+        double seconds = args.length > first ? Double.parseDouble(args[first]) : 3;
+        int[] counts = args.length > first + 1
+                ? Arrays.stream(args, first + 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 10, 100, 500};
+
+        Room[][] grid = new Room[SIDE][SIDE];
+        WorldBuilder builder = new WorldBuilder();
+        for (int y = 0; y < SIDE; y++) {
+            for (int x = 0; x < SIDE; x++) {
+                grid[y][x] = new Room("room-" + x + "-" + y);
+                if (x > 0) {
+                    builder.addRoom(grid[y][x], grid[y][x - 1], Direction.EAST);
+                } else if (y > 0) {
+                    builder.addRoom(grid[y][x], grid[y - 1][x], Direction.NORTH);
+                } else {
+                    builder.addRoom(grid[y][x], null, null);
+                }
+                builder.addItem(grid[y][x], new Relic("relic-" + x + "-" + y, y * SIDE + x + 1));
+            }
+        }
+        MultiPlayerGameManager game = new MultiPlayerGameManager(builder.buildRooms());
+
+        Path socketFile = unix ? Files.createTempDirectory("quartly").resolve("game.sock") : null;
+        SocketAddress bind = unix ? UnixDomainSocketAddress.of(socketFile) : new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (GameServer server = new GameServer(game, grid[0][0], bind)) {
+            SocketAddress address = server.getAddress();
+            System.out.println("Serving on " + address + ", " + seconds + " s per run");
+            System.out.println(String.format("%8s %10s %12s %10s %10s", "players", "commands", "commands/s", "p50 us", "p99 us"));
+            int run = 0;
+            for (int count : counts) {
+                System.out.println(run(address, count, seconds, run++));
+            }
+        }
+    }
+
+    /**
+     * Runs the given number of players for a while, all starting together.
+     *
+     * Returns A line of the report.
+     */
+    private static String run(SocketAddress address, int players, double seconds, int run) throws Exception {
+        List<Client> clients = new ArrayList<>(players);
+        CountDownLatch joined = new CountDownLatch(players);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            Client client = new Client(address, "bot-" + run + "-" + i, i);
+            clients.add(client);
+            Thread thread = new Thread(null, () -> client.play(joined, go, seconds), client.name, 256 * 1024);
+            thread.start();
+            threads.add(thread);
+        }
+        joined.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (Client client : clients) {
+            if (client.failure != null) {
+                throw new IOException(client.name + " failed", client.failure);
+            }
+            total += client.count;
+        }
+        long[] latencies = new long[total];
+        int filled = 0;
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, filled, client.count);
+            filled += client.count;
+        }
+        Arrays.sort(latencies);
+        return String.format("%8d %10d %12.0f %10.1f %10.1f", players, total, total / elapsed,
+                percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    /**
+     * A simulated player with its own connection.
+     */
+    private static final class Client {
+        private static final String[] DIRECTIONS = {"north", "east", "south", "west"};
+
+        private final SocketAddress address;
+        private final String name;
+        private final Random random;
+        private long[] latencies; // nanoseconds from sending a command to reading its whole answer
+        private int count;
+        private Exception failure;
+        private final List<String> seen; // items the last look showed
+        private final List<String> carried;
+
+        Client(SocketAddress address, String name, int seed) {
+            this.address = address;
+            this.name = name;
+            this.random = new Random(seed);
+            this.latencies = new long[1024];
+            this.count = 0;
+            this.seen = new ArrayList<>();
+            this.carried = new ArrayList<>();
+        }
+
+        void play(CountDownLatch joined, CountDownLatch go, double seconds) {
+            boolean counted = false;
+            try (SocketChannel channel = SocketChannel.open(this.address)) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                send(channel, "join " + this.name);
+                read(in);
+                joined.countDown();
+                counted = true;
+                go.await();
+                long deadline = System.nanoTime() + (long) (seconds * 1e9);
+                while (System.nanoTime() < deadline) {
+                    String command = nextCommand();
+                    long sent = System.nanoTime();
+                    send(channel, command);
+                    String answer = read(in);
+                    record(System.nanoTime() - sent);
+                    learn(command, answer);
+                }
+                send(channel, "quit");
+                read(in);
+            } catch (Exception e) {
+                this.failure = e;
+            } finally {
+                if (!counted) {
+                    joined.countDown();
+                }
+            }
+        }
+
+        private String nextCommand() {
+            int roll = this.random.nextInt(100);
+            if (roll < 45) {
+                return "move " + DIRECTIONS[this.random.nextInt(4)];
+            } else if (roll < 65) {
+                return "look";
+            } else if (roll < 80 && !this.seen.isEmpty()) {
+                return "pick up " + this.seen.get(this.random.nextInt(this.seen.size()));
+            } else if (roll < 95 && !this.carried.isEmpty()) {
+                return "drop " + this.carried.get(this.random.nextInt(this.carried.size()));
+            }
+            return "solve";
+        }
+
+        /**
+         * Keeps track of what the player saw and carries from the answers of the game.
+         */
+        private void learn(String command, String answer) {
+            if (command.equals("look")) {
+                this.seen.clear();
+                for (String line : answer.split("\n")) {
+                    if (line.startsWith("Items:")) {
+                        this.seen.addAll(Arrays.asList(line.substring(6).trim().split(" ")));
+                    }
+                }
+            } else if (command.startsWith("pick up ")) {
+                String item = command.substring(8);
+                this.seen.remove(item);
+                if (answer.contains(" picked up ")) {
+                    this.carried.add(item);
+                }
+            } else if (command.startsWith("drop ")) {
+                if (answer.contains(" dropped ")) {
+                    this.carried.remove(command.substring(5));
+                }
+            } else if (command.startsWith("move ")) {
+                this.seen.clear();
+            }
+        }
+
+        private void record(long latency) {
+            if (this.count == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            }
+            this.latencies[this.count++] = latency;
+        }
+
+        private static void send(SocketChannel channel, String command) throws IOException {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(command + "\n");
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        /**
+         * Reads an answer up to the empty line that ends it.
+         */
+        private static String read(BufferedReader in) throws IOException {
+            StringBuilder answer = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                answer.append(line).append('\n');
+            }
+            if (line == null) {
+                throw new IOException("The server closed the connection.");
+            }
+            return answer.toString();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive long keys to non negative int values.
+ * Used to index grid cells by their packed coordinates without boxing.
+ */
+class LongIntMap implements Cloneable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values; // value + 1, so that 0 marks an empty slot
+    private int size;
+
+    /**
+     * Constructs an empty LongIntMap.
+     */
+    LongIntMap() {
+        this(INITIAL_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs an empty LongIntMap that holds the given number of keys without resizing.
+     *
+     * @param expectedSize The number of keys to make room for.
+     */
+    LongIntMap(int expectedSize) {
+        int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2);
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Retrieves the value mapped to the key.
+     *
+     * @param key The key to look up.
+     * @return The value mapped to the key, or -1 if there is none.
+     */
+    int get(long key) {
+        int mask = this.keys.length - 1;
+        for (int i = slot(key, mask); this.values[i] != 0; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                return this.values[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value, must not be negative.
+     */
+    void put(long key, int value) {
+        if ((this.size + 1) * 2 > this.keys.length) {
+            resize(this.keys.length * 2);
+        }
+        int mask = this.keys.length - 1;
+        int i = slot(key, mask);
+        while (this.values[i] != 0) {
+            if (this.keys[i] == key) {
+                this.values[i] = value + 1;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value + 1;
+        this.size++;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key The key to remove.
+     */
+    void remove(long key) {
+        int mask = this.keys.length - 1;
+        int i = slot(key, mask);
+        while (this.values[i] != 0) {
+            if (this.keys[i] == key) {
+                this.values[i] = 0;
+                this.size--;
+                shiftBack(i, mask);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return The number of keys.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Moves the entries following a freed slot back so that no probe sequence is broken.
+     *
+     * @param free The slot that was just freed.
+     * @param mask The table mask.
+     */
+    private void shiftBack(int free, int mask) {
+        int i = (free + 1) & mask;
+        while (this.values[i] != 0) {
+            int home = slot(this.keys[i], mask);
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                this.keys[free] = this.keys[i];
+                this.values[free] = this.values[i];
+                this.values[i] = 0;
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Rebuilds the table with the given capacity.
+     *
+     * @param capacity The new capacity, a power of two.
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != 0) {
+                int i = slot(oldKeys[j], mask);
+                while (this.values[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Computes the home slot of a key.
+     *
+     * @param key  The key.
+     * @param mask The table mask.
+     * @return The home slot.
+     */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Creates a copy of this map.
+     *
+     * @return A copy sharing nothing with this map.
+     */
+    @Override
+    public LongIntMap clone() {
+        try {
+            LongIntMap copy = (LongIntMap) super.clone();
+            copy.keys = Arrays.copyOf(this.keys, this.keys.length);
+            copy.values = Arrays.copyOf(this.values, this.values.length);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+}
@@ -1,3 +1,7 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
 class MyCloneable implements Cloneable {
     private int num;
 
@@ -71,6 +75,15 @@ public class Main {
         }catch (Exception e){
             System.out.println("exception " + e);
         }
+
+        try {
+            System.out.println("Test 4 starts");
+            test4();
+            System.out.println("Test 4 done");
+            System.out.println("--------------------------------------------");
+        }catch (Exception e){
+            System.out.println("exception " + e);
+        }
     }
 
     /**
@@ -182,4 +195,77 @@ public class Main {
         areSame = item1 == item2;
         System.out.println("Are item1 and item2 the same: " + areSame);
     }
+
+    /**
+     * Lets one player pick up a key and a relic while another player uses the key and disassembles the relic,
+     * both at once, and checks that every item went to exactly one of them.
+     */
+    public static void test4() throws InterruptedException {
+        int rounds = 200;
+        int keyRounds = 0;
+        int relicRounds = 0;
+        PrintStream console = System.out;
+        for (int round = 0; round < rounds; round++) {
+            ByteArrayOutputStream captured = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(captured, true));
+            try {
+                MultiPlayerGameManager game = new MultiPlayerGameManager();
+                Room room = new Room("Vault");
+                Key key = new Key("Key", 7);
+                Relic relic = new Relic("Relic", 5);
+                Player picker = new Player("Picker", 5);
+                Player user = new Player("User", 5);
+                game.addRoom(room, null, null);
+                game.addItem(room, key);
+                game.addItem(room, relic);
+                game.addPlayer(picker);
+                game.addPlayer(user);
+                game.startPlayer(picker, room);
+                game.startPlayer(user, room);
+                CountDownLatch start = new CountDownLatch(1);
+                Thread picking = new Thread(() -> {
+                    awaitQuietly(start);
+                    game.pickUpItem(picker, key);
+                    game.pickUpItem(picker, relic);
+                });
+                Thread using = new Thread(() -> {
+                    awaitQuietly(start);
+                    game.useItem(user, key);
+                    game.disassembleItem(user, relic);
+                });
+                picking.start();
+                using.start();
+                start.countDown();
+                picking.join();
+                using.join();
+            } finally {
+                System.setOut(console);
+            }
+            String log = captured.toString();
+            if (count(log, "picked up Key") + count(log, "used Key") == 1) {
+                keyRounds++;
+            }
+            if (count(log, "picked up Relic") + count(log, "disassembled Relic") == 1) {
+                relicRounds++;
+            }
+        }
+        System.out.println("The key went to exactly one player in " + keyRounds + " of " + rounds + " rounds.");
+        System.out.println("The relic went to exactly one player in " + relicRounds + " of " + rounds + " rounds.");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
 }
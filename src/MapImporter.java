@@ -0,0 +1,397 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports a map written in a simple line oriented text format, reading it as a stream.
+ * Every line is applied as soon as it is read: rooms go straight into a QuartlyLinkedList and items straight into
+ * their room. A room linked to a room not declared yet waits until that room is placed, so the memory used grows
+ * with the number of rooms, never with the size of the text.
+ *
+ * <pre>
+ * # a comment, blank lines are ignored too
+ * room Hall                           the first room
+ * room Kitchen north of Hall          a room placed next to another one, declared before or after it
+ * room "Great Hall" east of Kitchen   names with spaces are quoted
+ * item Kitchen relic Gem 10           also: key NAME VALUE, bag NAME VALUE CAPACITY, largebag NAME VALUE CAPACITY
+ * riddle Kitchen                      the puzzle of the room is active
+ * unlock Hall Key1 5                  the room starts unlocked with a key
+ * player Alice 3 Hall                 the player, the size of the bag and the starting room
+ * </pre>
+ * Every problem in the map is reported at the end, all at once, with its line number.
+ */
+public class MapImporter {
+    private final QuartlyLinkedList<Room> rooms;
+    private final Map<String, Room> roomsByName; // Every room declared or referred to so far
+    private final Map<String, QuartNode<Room>> placed; // Rooms already in the list
+    private final Map<String, List<Waiting>> waiting; // Rooms declared next to a room not placed yet, by that room
+    private final Map<String, Integer> declaredAt; // Line declaring each room
+    private final Map<String, Integer> referredAt; // First line referring to each room
+    private final List<String> problems;
+    private String playerName;
+    private int playerMaxItems;
+    private String playerRoom;
+    private int lineNumber;
+
+    /**
+     * Constructs a MapImporter with nothing imported yet.
+     */
+    public MapImporter() {
+        this.rooms = new QuartlyLinkedList<>();
+        this.roomsByName = new HashMap<>();
+        this.placed = new HashMap<>();
+        this.waiting = new LinkedHashMap<>();
+        this.declaredAt = new HashMap<>();
+        this.referredAt = new LinkedHashMap<>();
+        this.problems = new ArrayList<>();
+        this.lineNumber = 0;
+    }
+
+    /**
+     * Imports a map into a new game, without printing anything.
+     *
+     * @param reader The text of the map.
+     * Returns The new game.
+     * @throws IOException if the text cannot be read.
+     * throws InvalidWorldLayout listing every problem if the map is not valid.
+     */
+    public static GameManager importGame(Reader reader) throws IOException {
+        MapImporter importer = new MapImporter();
+        importer.read(reader);
+        return importer.toGame();
+    }
+
+    /**
+     * Imports a map into a new game, decoding the bytes of the channel as UTF-8.
+     *
+     * @param channel The channel to read the map from.
+     * Returns The new game.
+     * @throws IOException if the channel cannot be read.
+     * throws InvalidWorldLayout listing every problem if the map is not valid.
+     */
+    public static GameManager importGame(ReadableByteChannel channel) throws IOException {
+        return importGame(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Reads lines of a map and applies them. May be called again to read the rest of a map from another source.
+     *
+     * @param reader The text to read.
+     * @throws IOException if the text cannot be read.
+     */
+    public void read(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            this.lineNumber++;
+            List<String> words = split(line);
+            if (words == null) {
+                problem("a quote is not closed.");
+            } else if (!words.isEmpty()) {
+                apply(words);
+            }
+        }
+    }
+
+    /**
+     * Checks that every room was declared and placed, and returns the rooms.
+     *
+     * Returns The rooms of the map, rooted at the first room.
+     * throws InvalidWorldLayout listing every problem if the map is not valid.
+     */
+    public QuartlyLinkedList<Room> toRooms() {
+        List<String> found = new ArrayList<>(this.problems);
+        for (Map.Entry<String, Integer> reference : this.referredAt.entrySet()) {
+            if (!this.declaredAt.containsKey(reference.getKey())) {
+                found.add("line " + reference.getValue() + ": room " + reference.getKey() + " is never declared.");
+            }
+        }
+        for (List<Waiting> rooms : this.waiting.values()) {
+            for (Waiting room : rooms) {
+                if (this.declaredAt.containsKey(room.target)) {
+                    found.add("line " + room.line + ": room " + room.room.getName() + " cannot be reached from the first room.");
+                }
+            }
+        }
+        if (this.placed.isEmpty()) {
+            found.add("The map has no first room.");
+        }
+        if (!found.isEmpty()) {
+            throw new InvalidWorldLayout(found);
+        }
+        return this.rooms;
+    }
+
+    /**
+     * Checks the map and returns a new game holding its rooms and its player.
+     *
+     * Returns The new game.
+     * throws InvalidWorldLayout listing every problem if the map is not valid.
+     */
+    public GameManager toGame() {
+        GameManager game = new GameManager(toRooms());
+        if (this.playerName != null) {
+            game.placePlayer(new Player(this.playerName, this.playerMaxItems), this.playerRoom != null ? this.roomsByName.get(this.playerRoom) : null);
+        }
+        return game;
+    }
+
+    /**
+     * Applies one line of the map.
+     *
+     * @param words The words of the line, at least one.
+     */
+    private void apply(List<String> words) {
+        String command = words.get(0).toLowerCase(Locale.ROOT);
+        switch (command) {
+            case "room":
+                if (words.size() == 2) {
+                    declareRoom(words.get(1), null, null);
+                } else if (words.size() == 5 && words.get(3).equalsIgnoreCase("of") && parseDirection(words.get(2)) != null) {
+                    declareRoom(words.get(1), parseDirection(words.get(2)), words.get(4));
+                } else {
+                    problem("expected room NAME or room NAME DIRECTION of TARGET.");
+                }
+                break;
+            case "item":
+                if (words.size() >= 5) {
+                    Item item = parseItem(words);
+                    if (item != null && !refer(words.get(1)).addItem(item)) {
+                        problem("room " + words.get(1) + " cannot hold " + item.getName() + ", it is full.");
+                    }
+                } else {
+                    problem("expected item ROOM KIND NAME VALUE [CAPACITY].");
+                }
+                break;
+            case "riddle":
+                if (words.size() == 2) {
+                    refer(words.get(1)).setRiddle(true);
+                } else {
+                    problem("expected riddle ROOM.");
+                }
+                break;
+            case "unlock":
+                Integer keyValue = words.size() == 4 ? parseNumber(words.get(3)) : null;
+                if (keyValue != null) {
+                    refer(words.get(1)).unlockRoom(new Key(words.get(2), keyValue));
+                } else if (words.size() != 4) {
+                    problem("expected unlock ROOM KEY VALUE.");
+                }
+                break;
+            case "player":
+                Integer maxItems = words.size() == 3 || words.size() == 4 ? parseNumber(words.get(2)) : null;
+                if (this.playerName != null) {
+                    problem("the map already has a player.");
+                } else if (maxItems != null) {
+                    this.playerName = words.get(1);
+                    this.playerMaxItems = maxItems;
+                    if (words.size() == 4) {
+                        this.playerRoom = words.get(3);
+                        refer(this.playerRoom);
+                    }
+                } else if (words.size() != 3 && words.size() != 4) {
+                    problem("expected player NAME MAX_ITEMS [ROOM].");
+                }
+                break;
+            default:
+                problem("unknown command " + words.get(0) + ".");
+        }
+    }
+
+    /**
+     * Declares a room and places it, together with every room that was waiting for it.
+     *
+     * @param name      The name of the room.
+     * @param direction The direction of target in which the room lies, or null for the first room.
+     * @param target    The name of the room it is placed next to, or null for the first room.
+     */
+    private void declareRoom(String name, Direction direction, String target) {
+        if (this.declaredAt.containsKey(name)) {
+            problem("room " + name + " is already declared on line " + this.declaredAt.get(name) + ".");
+            return;
+        }
+        Room room = refer(name);
+        this.declaredAt.put(name, this.lineNumber);
+        if (target == null) {
+            if (!this.placed.isEmpty()) {
+                problem("room " + name + " has no target, but the map already has a first room.");
+                return;
+            }
+            this.rooms.add(room, null, null);
+            this.placed.put(name, this.rooms.getRoot());
+            placeWaiting(name);
+        } else if (this.placed.containsKey(target)) {
+            if (place(new Waiting(room, direction, target, this.lineNumber))) {
+                placeWaiting(name);
+            }
+        } else {
+            refer(target);
+            this.waiting.computeIfAbsent(target, key -> new ArrayList<>(1)).add(new Waiting(room, direction, target, this.lineNumber));
+        }
+    }
+
+    /**
+     * Places a room next to its target, which is already placed.
+     *
+     * Returns true if the room was placed, false after reporting that its cell is taken.
+     */
+    private boolean place(Waiting room) {
+        try {
+            this.placed.put(room.room.getName(), this.rooms.addNextTo(room.room, this.placed.get(room.target), room.direction));
+            return true;
+        } catch (DirectionIsOccupied e) {
+            this.problems.add("line " + room.line + ": room " + room.room.getName() + " would take a cell that is already taken, "
+                    + Room.getDirectionString(room.direction) + " of " + room.target + ".");
+            return false;
+        }
+    }
+
+    /**
+     * Places every room that was waiting for a room that was just placed, and in turn the rooms waiting for them.
+     */
+    private void placeWaiting(String name) {
+        List<String> ready = new ArrayList<>();
+        ready.add(name);
+        while (!ready.isEmpty()) {
+            List<Waiting> rooms = this.waiting.remove(ready.remove(ready.size() - 1));
+            if (rooms != null) {
+                for (Waiting room : rooms) {
+                    if (place(room)) {
+                        ready.add(room.room.getName());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the room with the given name, creating it the first time it is mentioned.
+     */
+    private Room refer(String name) {
+        Room room = this.roomsByName.get(name);
+        if (room == null) {
+            room = new Room(name);
+            this.roomsByName.put(name, room);
+            this.referredAt.put(name, this.lineNumber);
+        }
+        return room;
+    }
+
+    /**
+     * Parses the item of an item line: item ROOM KIND NAME VALUE [CAPACITY].
+     *
+     * Returns The item, or null after reporting the problem.
+     */
+    private Item parseItem(List<String> words) {
+        String kind = words.get(2).toLowerCase(Locale.ROOT);
+        boolean bag = kind.equals("bag") || kind.equals("largebag");
+        if (words.size() != (bag ? 6 : 5)) {
+            problem(bag ? "expected item ROOM " + kind + " NAME VALUE CAPACITY." : "expected item ROOM " + kind + " NAME VALUE.");
+            return null;
+        }
+        Integer value = parseNumber(words.get(4));
+        Integer capacity = bag ? parseNumber(words.get(5)) : Integer.valueOf(0);
+        if (value == null || capacity == null) {
+            return null;
+        }
+        switch (kind) {
+            case "key":
+                return new Key(words.get(3), value);
+            case "relic":
+                return new Relic(words.get(3), value);
+            case "bag":
+                return new Bag(words.get(3), value, capacity);
+            case "largebag":
+                return new LargeBag(words.get(3), value, capacity);
+            default:
+                problem("unknown item kind " + words.get(2) + ".");
+                return null;
+        }
+    }
+
+    private Integer parseNumber(String word) {
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            problem(word + " is not a number.");
+            return null;
+        }
+    }
+
+    private static Direction parseDirection(String word) {
+        switch (word.toLowerCase(Locale.ROOT)) {
+            case "north":
+                return Direction.NORTH;
+            case "east":
+                return Direction.EAST;
+            case "south":
+                return Direction.SOUTH;
+            case "west":
+                return Direction.WEST;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Splits a line into words, keeping quoted words whole and dropping a trailing comment.
+     *
+     * Returns The words, or null if a quote is not closed.
+     */
+    private static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                break;
+            } else if (c == '"') {
+                int end = line.indexOf('"', i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                words.add(line.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                words.add(line.substring(start, i));
+            }
+        }
+        return words;
+    }
+
+    private void problem(String message) {
+        this.problems.add("line " + this.lineNumber + ": " + message);
+    }
+
+    /**
+     * A room declared next to another room, waiting for that room to be placed.
+     */
+    private static final class Waiting {
+        private final Room room;
+        private final Direction direction;
+        private final String target;
+        private final int line;
+
+        Waiting(Room room, Direction direction, String target, int line) {
+            this.room = room;
+            this.direction = direction;
+            this.target = target;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A game hosting many players at once in one world, each of them driven by its own thread.
+ *
+ * Rooms are guarded by a fixed set of lock stripes, a room using the stripe its hash code falls into, so players
+ * standing in different rooms do not wait for each other unless their rooms share a stripe. An action of a player
+ * holds the monitor of the player and then the stripe of its room; a move holds the stripes of both rooms, taken in
+ * the order of their stripe numbers so two players moving against each other cannot deadlock. Adding or removing
+ * a room changes the layout every action walks, so it takes all the stripes, again in order.
+ *
+ * Picking up and dropping items take no stripe at all: the inventory of a room is a set of slots changed with
+ * compare-and-set, so those actions only hold the monitor of the player, whose bag no other thread touches.
+ * Using or disassembling an item does hold the stripe, yet a pick-up can still take the item from under it, so
+ * those actions first take the item out of the room with the same compare-and-set and only act if that worked.
+ *
+ * Several actions may look rooms up in the QuartlyLinkedList at once, each holding only its own stripes. That is
+ * safe only because such a lookup never writes to the list. QuartlyLinkedList.getNode files a node again when the
+ * hash code of its value changed since it was filed, and that would race. Room.hashCode depends only on the id,
+ * which never changes, so getNode and isExist only read the list here. Any change to Room.hashCode must keep it
+ * that way.
+ *
+ * Iterating and streaming only read the list as well: iterator() takes the traversal buffers the list keeps for
+ * reuse atomically, so concurrent traversals never share one. A route search does write to the list, since
+ * findPath reuses scratch buffers kept in it, so it must hold all the stripes, as addRoom and removeRoom do.
+ */
+public class MultiPlayerGameManager {
+    private static final int STRIPES = 64; // a power of two
+
+    private final QuartlyLinkedList<Room> rooms;
+    private final ConcurrentHashMap<String, Player> players; // players by name
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Constructs an empty game.
+     */
+    MultiPlayerGameManager() {
+        this(new QuartlyLinkedList<>());
+    }
+
+    /**
+     * Constructs a game around rooms that were already built, for instance by a WorldBuilder.
+     *
+     * @param rooms The rooms of the new game.
+     */
+    MultiPlayerGameManager(QuartlyLinkedList<Room> rooms) {
+        this.rooms = rooms;
+        this.players = new ConcurrentHashMap<>();
+        this.stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Adds a player to the game. Players are told apart by name.
+     *
+     * @param player The player to be added.
+     */
+    public void addPlayer(Player player) {
+        if (this.players.putIfAbsent(player.getName(), player) == null) {
+            System.out.println(player.getName() + " was added to the game.");
+        } else {
+            System.out.println("Could not add " + player.getName() + " to the game.");
+        }
+    }
+
+    /**
+     * Removes a player from the game.
+     *
+     * @param player The player to be removed.
+     */
+    public void removePlayer(Player player) {
+        synchronized (player) {
+            if (this.players.remove(player.getName(), player)) {
+                player.resetPlayer();
+                System.out.println(player.getName() + " was removed from the game.");
+            } else {
+                System.out.println(player.getName() + " does not exist.");
+            }
+        }
+    }
+
+    /**
+     * Adds a room to the game environment, holding every stripe while the layout changes.
+     *
+     * @param toInsert  The room to be added.
+     * @param target    The room which toInsert is added next to, or null for the first room.
+     * @param direction The direction of target in which the room is placed.
+     * throws RoomDoesNotExist if target is not in the game, ExitIsOccupied if the exit is taken.
+     */
+    public void addRoom(Room toInsert, Room target, Direction direction) {
+        lockAll();
+        try {
+            if (this.rooms.isExist(toInsert)) {
+                System.out.println("Could not add " + toInsert.getName() + " to the game.");
+                return;
+            }
+            this.rooms.add(toInsert, target, direction);
+            if (target != null)
+                System.out.println(toInsert.getName() + " was added and is connected to " + target.getName() + " from the " + Room.getDirectionString(direction) + " exit.");
+            else
+                System.out.println(toInsert.getName() + " was added.");
+        } catch (NoSuchElement e) {
+            throw new RoomDoesNotExist();
+        } catch (DirectionIsOccupied e) {
+            throw new ExitIsOccupied();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Removes a room from the game environment, holding every stripe while the layout changes.
+     *
+     * @param room The room to be removed.
+     * throws RoomDoesNotExist if the room is not in the game.
+     */
+    public void removeRoom(Room room) {
+        lockAll();
+        try {
+            this.rooms.remove(room);
+            System.out.println(room.getName() + " was removed from the game.");
+            room.reset();
+        } catch (NoSuchElement e) {
+            throw new RoomDoesNotExist();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Adds an item to a specific room.
+     *
+     * @param room The room where the item is to be added.
+     * @param item The item to be added.
+     */
+    public void addItem(Room room, Item item) {
+        ReentrantLock stripe = stripeOf(room);
+        stripe.lock();
+        try {
+            if (this.rooms.isExist(room) && room.addItem(item)) {
+                System.out.println(item.getName() + " was added to the game.");
+            } else {
+                System.out.println("Could not add " + item.getName() + " to the game.");
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Starts a player in a specified room.
+     *
+     * @param player The player.
+     * @param room   The room where the player starts.
+     */
+    public void startPlayer(Player player, Room room) {
+        synchronized (player) {
+            ReentrantLock stripe = stripeOf(room);
+            stripe.lock();
+            try {
+                player.startPlayer(room);
+                if (player.getCurrentRoom() == room) {
+                    player.setCurrentNode(this.rooms.getNode(room));
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves a player in a specified direction, holding the stripes of the room it leaves and of the room it enters.
+     *
+     * @param player    The player.
+     * @param direction The direction in which the player moves.
+     */
+    public void movePlayer(Player player, Direction direction) {
+        synchronized (player) {
+            Room from = player.getCurrentRoom();
+            if (from == null) {
+                return;
+            }
+            ReentrantLock held = stripeOf(from);
+            held.lock();
+            try {
+                while (true) {
+                    // The layout cannot change while a stripe is held, so the neighbor found now stays the neighbor
+                    QuartNode<Room> node = this.rooms.getNode(from);
+                    QuartNode<Room> next = node != null ? node.getNeighbor(direction) : null;
+                    Room to = next != null ? next.getValue() : null;
+                    if (to == null || stripeOf(to) == held) {
+                        player.movePlayer(this.rooms, direction);
+                        return;
+                    }
+                    ReentrantLock other = stripeOf(to);
+                    if (stripeIndex(to) > stripeIndex(from)) {
+                        other.lock();
+                        try {
+                            player.movePlayer(this.rooms, direction);
+                            return;
+                        } finally {
+                            other.unlock();
+                        }
+                    }
+                    // The other stripe comes first in the lock order, so let go and take both in order
+                    held.unlock();
+                    other.lock();
+                    held.lock();
+                    try {
+                        QuartNode<Room> again = this.rooms.getNode(from);
+                        if (again != null && again.getNeighbor(direction) == next && next.getValue() == to) {
+                            player.movePlayer(this.rooms, direction);
+                            return;
+                        }
+                    } finally {
+                        other.unlock();
+                    }
+                    // The layout changed while no stripe was held, look again
+                }
+            } finally {
+                held.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks up an item from the player's room and adds it to the player's inventory.
+     *
+     * @param player The player.
+     * @param item   The item to be picked up.
+     */
+    public void pickUpItem(Player player, Item item) {
+        asStarted(player, () -> player.pickUpItem(item));
+    }
+
+    /**
+     * Drops an item from the player's inventory into the player's room.
+     *
+     * @param player The player.
+     * @param item   The item to be dropped.
+     */
+    public void dropItem(Player player, Item item) {
+        asStarted(player, () -> player.dropItem(item));
+    }
+
+    /**
+     * Disassembles an item either from the player's inventory or the player's room.
+     *
+     * @param player The player.
+     * @param item   The item to be disassembled.
+     */
+    public void disassembleItem(Player player, Item item) {
+        inCurrentRoom(player, () -> player.disassembleItem(item));
+    }
+
+    /**
+     * Solves the puzzle in the player's room.
+     *
+     * @param player The player.
+     */
+    public void solvePuzzle(Player player) {
+        inCurrentRoom(player, player::solvePuzzle);
+    }
+
+    /**
+     * Uses an item lying in the player's room or carried by the player.
+     *
+     * @param player The player.
+     * @param item   The item to use.
+     */
+    public void useItem(Player player, Item item) {
+        inCurrentRoom(player, () -> item.useItem(player));
+    }
+
+    /**
+     * Describes the player's room: its name, the items lying in it and its exits.
+     * The room is read while holding its stripe, so the description never mixes the room before and after a change.
+     *
+     * @param player The player.
+     */
+    public void look(Player player) {
+        inCurrentRoom(player, () -> {
+            Room room = player.getCurrentRoom();
+            StringBuilder text = new StringBuilder(player.getName()).append(" is in ").append(room.getName()).append('.');
+            Item[] items = room.getItems();
+            if (items != null) {
+                text.append("\nItems:");
+                for (Item item : items) {
+                    text.append(' ').append(item.getName());
+                }
+            }
+            QuartNode<Room> node = this.rooms.getNode(room);
+            if (node != null) {
+                text.append("\nExits:");
+                for (Direction direction : Direction.values()) {
+                    if (node.getNeighbor(direction) != null) {
+                        text.append(' ').append(Room.getDirectionString(direction));
+                    }
+                }
+            }
+            System.out.println(text);
+        });
+    }
+
+    /**
+     * Finds an item lying in the player's room by its name, ignoring case, while holding the stripe of the room.
+     *
+     * @param player The player.
+     * @param name   The name of the item.
+     * Returns The item, or null if the player has not started or no item of the room has that name.
+     */
+    public Item findItem(Player player, String name) {
+        synchronized (player) {
+            Room room = player.getCurrentRoom();
+            if (room == null) {
+                return null;
+            }
+            ReentrantLock stripe = stripeOf(room);
+            stripe.lock();
+            try {
+                Item[] items = room.getItems();
+                if (items != null) {
+                    for (Item item : items) {
+                        if (item != null && item.getName().equalsIgnoreCase(name)) {
+                            return item;
+                        }
+                    }
+                }
+                return null;
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Retrieves a player of the game.
+     *
+     * @param name The name of the player.
+     * Returns The player, or null if no player of the game has that name.
+     */
+    public Player getPlayer(String name) {
+        return this.players.get(name);
+    }
+
+    /**
+     * Returns a live view of the players of the game.
+     */
+    public Collection<Player> getPlayers() {
+        return this.players.values();
+    }
+
+    public QuartlyLinkedList<Room> getRooms() {
+        return this.rooms;
+    }
+
+    /**
+     * Runs an action of a started player while holding the monitor of the player.
+     */
+    private void asStarted(Player player, Runnable action) {
+        synchronized (player) {
+            if (player.getCurrentRoom() == null) {
+                System.out.println(player.getName() + " has not started.");
+                return;
+            }
+            action.run();
+        }
+    }
+
+    /**
+     * Runs an action of a started player while holding the monitor of the player and the stripe of its room.
+     */
+    private void inCurrentRoom(Player player, Runnable action) {
+        synchronized (player) {
+            Room room = player.getCurrentRoom();
+            if (room == null) {
+                System.out.println(player.getName() + " has not started.");
+                return;
+            }
+            ReentrantLock stripe = stripeOf(room);
+            stripe.lock();
+            try {
+                action.run();
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripeOf(Room room) {
+        return this.stripes[stripeIndex(room)];
+    }
+
+    private static int stripeIndex(Room room) {
+        int h = room.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe : this.stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = this.stripes.length - 1; i >= 0; i--) {
+            this.stripes[i].unlock();
+        }
+    }
+}
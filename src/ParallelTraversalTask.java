@@ -0,0 +1,136 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * A fork/join task that maps and reduces the values of every node reachable from its starting nodes.
+ * Each task walks the graph on its own stack and hands half of that stack to a new task whenever the pool
+ * runs short of queued work, so idle workers can steal the unvisited branches.
+ * Nodes are claimed in a bitset shared by all the tasks of one traversal, one compare-and-set per node.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ * @param <R> The type of the result.
+ */
+@SuppressWarnings("serial") // never serialized, it only lives in a pool of this process
+class ParallelTraversalTask<E extends Cloneable, R> extends RecursiveTask<R> {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int SPLIT_INTERVAL = 32; // nodes visited between two checks for idle workers
+
+    private final Claims<E> claims;
+    private final ArrayDeque<QuartNode<E>> pending; // claimed nodes not yet visited
+    private final R identity;
+    private final Function<? super E, ? extends R> mapper;
+    private final BinaryOperator<R> combiner;
+
+    /**
+     * Constructs a task that starts from the root of a traversal.
+     *
+     * @param root      The node to start from.
+     * @param slotCount The number of slots handed out by the list.
+     * @param identity  The identity of the combiner.
+     * @param mapper    The function applied to each value.
+     * @param combiner  The associative function combining two results.
+     */
+    ParallelTraversalTask(QuartNode<E> root, int slotCount, R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner) {
+        this(new Claims<>(slotCount), new ArrayDeque<>(), identity, mapper, combiner);
+        if (root != null && this.claims.claim(root)) {
+            this.pending.push(root);
+        }
+    }
+
+    private ParallelTraversalTask(Claims<E> claims, ArrayDeque<QuartNode<E>> pending, R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner) {
+        this.claims = claims;
+        this.pending = pending;
+        this.identity = identity;
+        this.mapper = mapper;
+        this.combiner = combiner;
+    }
+
+    @Override
+    protected R compute() {
+        R result = this.identity;
+        List<ParallelTraversalTask<E, R>> forked = new ArrayList<>();
+        int sinceSplit = 0;
+        while (!this.pending.isEmpty()) {
+            if (++sinceSplit >= SPLIT_INTERVAL && this.pending.size() > 1 && getSurplusQueuedTaskCount() < 2) {
+                forked.add(split());
+                sinceSplit = 0;
+            }
+            QuartNode<E> node = this.pending.pop();
+            E value = node.getValue();
+            if (value != null) {
+                result = this.combiner.apply(result, this.mapper.apply(value));
+            }
+            for (Direction direction : DIRECTIONS) {
+                QuartNode<E> neighbor = node.getNeighbor(direction);
+                if (neighbor != null && this.claims.claim(neighbor)) {
+                    this.pending.push(neighbor);
+                }
+            }
+        }
+        for (ParallelTraversalTask<E, R> task : forked) {
+            result = this.combiner.apply(result, task.join());
+        }
+        return result;
+    }
+
+    /**
+     * Hands the older half of the pending nodes to a new forked task.
+     * The oldest nodes sit closest to the root, so they tend to carry the largest unvisited branches.
+     *
+     * @return The forked task.
+     */
+    private ParallelTraversalTask<E, R> split() {
+        ArrayDeque<QuartNode<E>> half = new ArrayDeque<>();
+        for (int i = this.pending.size() / 2; i > 0; i--) {
+            half.push(this.pending.pollLast());
+        }
+        ParallelTraversalTask<E, R> task = new ParallelTraversalTask<>(this.claims, half, this.identity, this.mapper, this.combiner);
+        task.fork();
+        return task;
+    }
+
+    /**
+     * Visit claims shared by the tasks of one traversal, kept in a bitset indexed by node slot.
+     *
+     * @param <E> The type of value stored in the nodes.
+     */
+    private static final class Claims<E extends Cloneable> {
+        private final AtomicLongArray bits;
+        private final Set<QuartNode<E>> outside; // claims of nodes without a slot
+
+        Claims(int slotCount) {
+            this.bits = new AtomicLongArray(Math.max((slotCount + 63) >>> 6, 1));
+            this.outside = ConcurrentHashMap.newKeySet();
+        }
+
+        /**
+         * Claims the node for the calling task.
+         *
+         * @param node The node to claim.
+         * @return true if the node was not claimed before, otherwise false.
+         */
+        boolean claim(QuartNode<E> node) {
+            int slot = node.getSlot();
+            if (slot <= 0 || (slot >>> 6) >= this.bits.length()) {
+                return this.outside.add(node);
+            }
+            int word = slot >>> 6;
+            long bit = 1L << slot;
+            long current = this.bits.get(word);
+            while ((current & bit) == 0) {
+                if (this.bits.compareAndSet(word, current, current | bit)) {
+                    return true;
+                }
+                current = this.bits.get(word);
+            }
+            return false;
+        }
+    }
+}
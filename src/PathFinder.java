@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Finds shortest routes between two nodes of a QuartlyLinkedList with a bidirectional breadth first search.
+ * The search grows the smaller of the two frontiers one whole level at a time, and all its scratch arrays are
+ * indexed by node slot and kept between searches. Visits are stamped with a search number, so the arrays never
+ * have to be cleared.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ */
+class PathFinder<E extends Cloneable> {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int stamp; // number of the current search
+    private int[] forwardStamp; // stamp of the search that reached the slot from the start
+    private int[] backwardStamp; // stamp of the search that reached the slot from the goal
+    private int[] forwardDistance;
+    private int[] backwardDistance;
+    private int[] previous; // slot the start side came from
+    private int[] following; // slot the goal side continues to
+    private byte[] previousDirection; // direction taken from previous to reach the slot
+    private byte[] followingDirection; // direction taken from the slot to reach following
+    private int[] forwardQueue;
+    private int[] backwardQueue;
+    private int[] nextLevel;
+
+    /**
+     * Constructs a PathFinder with empty scratch arrays.
+     */
+    PathFinder() {
+        this.stamp = 0;
+        ensureCapacity(16);
+    }
+
+    /**
+     * Finds a shortest sequence of moves from one node to another.
+     *
+     * @param nodes    The nodes of the list by slot.
+     * @param slots    One past the last slot handed out.
+     * @param from     The node to start from.
+     * @param to       The node to reach.
+     * @param canLeave Tells whether a value lets a walker leave its node.
+     * @return The directions to follow, empty if from is to, or null if to cannot be reached.
+     */
+    List<Direction> find(QuartNode<E>[] nodes, int slots, QuartNode<E> from, QuartNode<E> to, Predicate<? super E> canLeave) {
+        if (from == to) {
+            return new ArrayList<>();
+        }
+        if (from.getSlot() == 0 || to.getSlot() == 0) {
+            return null;
+        }
+        ensureCapacity(slots);
+        nextStamp();
+        int start = from.getSlot();
+        int goal = to.getSlot();
+        this.forwardStamp[start] = this.stamp;
+        this.forwardDistance[start] = 0;
+        this.backwardStamp[goal] = this.stamp;
+        this.backwardDistance[goal] = 0;
+        this.forwardQueue[0] = start;
+        this.backwardQueue[0] = goal;
+        int forwardSize = 1;
+        int backwardSize = 1;
+        int meeting = -1;
+        while (forwardSize > 0 && backwardSize > 0 && meeting < 0) {
+            if (forwardSize <= backwardSize) {
+                forwardSize = expandForward(nodes, forwardSize, canLeave);
+                meeting = bestMeeting(this.forwardQueue, forwardSize);
+            } else {
+                backwardSize = expandBackward(nodes, backwardSize, canLeave);
+                meeting = bestMeeting(this.backwardQueue, backwardSize);
+            }
+        }
+        if (meeting < 0) {
+            return null;
+        }
+        return route(start, goal, meeting);
+    }
+
+    /**
+     * Replaces the forward frontier by the next level of nodes reached from the start.
+     *
+     * @return The size of the new frontier.
+     */
+    private int expandForward(QuartNode<E>[] nodes, int size, Predicate<? super E> canLeave) {
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = this.forwardQueue[i];
+            QuartNode<E> node = nodes[slot];
+            if (!canLeave.test(node.getValue())) {
+                continue;
+            }
+            for (Direction direction : DIRECTIONS) {
+                QuartNode<E> neighbor = node.getNeighbor(direction);
+                if (neighbor == null || neighbor.getSlot() == 0 || this.forwardStamp[neighbor.getSlot()] == this.stamp) {
+                    continue;
+                }
+                int target = neighbor.getSlot();
+                this.forwardStamp[target] = this.stamp;
+                this.forwardDistance[target] = this.forwardDistance[slot] + 1;
+                this.previous[target] = slot;
+                this.previousDirection[target] = (byte) direction.ordinal();
+                this.nextLevel[next++] = target;
+            }
+        }
+        int[] swap = this.forwardQueue;
+        this.forwardQueue = this.nextLevel;
+        this.nextLevel = swap;
+        return next;
+    }
+
+    /**
+     * Replaces the backward frontier by the next level of nodes the goal can be reached from.
+     *
+     * @return The size of the new frontier.
+     */
+    private int expandBackward(QuartNode<E>[] nodes, int size, Predicate<? super E> canLeave) {
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = this.backwardQueue[i];
+            QuartNode<E> node = nodes[slot];
+            for (Direction direction : DIRECTIONS) {
+                QuartNode<E> neighbor = node.getNeighbor(direction);
+                if (neighbor == null || neighbor.getSlot() == 0 || this.backwardStamp[neighbor.getSlot()] == this.stamp
+                        || !canLeave.test(neighbor.getValue())) {
+                    continue;
+                }
+                int source = neighbor.getSlot();
+                this.backwardStamp[source] = this.stamp;
+                this.backwardDistance[source] = this.backwardDistance[slot] + 1;
+                this.following[source] = slot;
+                this.followingDirection[source] = (byte) QuartlyLinkedList.getOppositeDirection(direction).ordinal();
+                this.nextLevel[next++] = source;
+            }
+        }
+        int[] swap = this.backwardQueue;
+        this.backwardQueue = this.nextLevel;
+        this.nextLevel = swap;
+        return next;
+    }
+
+    /**
+     * Picks, among the nodes of a fresh frontier reached from both sides, the one on the shortest route.
+     *
+     * @return The slot of that node, or -1 if the two searches have not met.
+     */
+    private int bestMeeting(int[] frontier, int size) {
+        int best = -1;
+        int bestLength = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int slot = frontier[i];
+            if (this.forwardStamp[slot] == this.stamp && this.backwardStamp[slot] == this.stamp) {
+                int length = this.forwardDistance[slot] + this.backwardDistance[slot];
+                if (length < bestLength) {
+                    best = slot;
+                    bestLength = length;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Joins the start side and the goal side of the route at the meeting node.
+     *
+     * @return The directions from start to goal.
+     */
+    private List<Direction> route(int start, int goal, int meeting) {
+        List<Direction> directions = new ArrayList<>(this.forwardDistance[meeting] + this.backwardDistance[meeting]);
+        for (int slot = meeting; slot != start; slot = this.previous[slot]) {
+            directions.add(DIRECTIONS[this.previousDirection[slot]]);
+        }
+        Collections.reverse(directions);
+        for (int slot = meeting; slot != goal; slot = this.following[slot]) {
+            directions.add(DIRECTIONS[this.followingDirection[slot]]);
+        }
+        return directions;
+    }
+
+    /**
+     * Moves to the next search number, clearing the stamps when the counter wraps around.
+     */
+    private void nextStamp() {
+        if (++this.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(this.forwardStamp, 0);
+            Arrays.fill(this.backwardStamp, 0);
+            this.stamp = 1;
+        }
+    }
+
+    /**
+     * Grows the scratch arrays to hold the given number of slots.
+     *
+     * @param slots The number of slots to hold.
+     */
+    private void ensureCapacity(int slots) {
+        if (this.forwardStamp != null && this.forwardStamp.length >= slots) {
+            return;
+        }
+        int capacity = Math.max(slots, this.forwardStamp == null ? 0 : this.forwardStamp.length * 2);
+        this.forwardStamp = grow(this.forwardStamp, capacity);
+        this.backwardStamp = grow(this.backwardStamp, capacity);
+        this.forwardDistance = new int[capacity];
+        this.backwardDistance = new int[capacity];
+        this.previous = new int[capacity];
+        this.following = new int[capacity];
+        this.previousDirection = new byte[capacity];
+        this.followingDirection = new byte[capacity];
+        this.forwardQueue = new int[capacity];
+        this.backwardQueue = new int[capacity];
+        this.nextLevel = new int[capacity];
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        return array == null ? new int[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
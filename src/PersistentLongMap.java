@@ -0,0 +1,369 @@
+import java.util.function.Consumer;
+
+/**
+ * An immutable map from long keys to values, built as a hash array mapped trie.
+ * Every level of the trie consumes five bits of the key, starting from the lowest ones, and keeps its children
+ * in an array compacted by a 32 bit bitmap. Updates copy only the path from the root to the changed entry,
+ * so a new version shares all the rest of its structure with the version it was made from.
+ *
+ * @param <V> The type of the values.
+ */
+public final class PersistentLongMap<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentLongMap<?> EMPTY = new PersistentLongMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <V> The type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    /**
+     * Builds a map holding the given entries in one go, without the copying that a put per entry would do.
+     *
+     * @param keys   The keys, all different.
+     * @param values The values, in the same order as the keys, none of them null.
+     * @param count  The number of entries to take from the two arrays.
+     * @param <V>    The type of the values.
+     * @return The map.
+     */
+    public static <V> PersistentLongMap<V> of(long[] keys, V[] values, int count) {
+        if (count == 0) {
+            return empty();
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Object built = build(keys, values, order, new int[count], 0, count, 0);
+        Node root = built instanceof Leaf ? new Node(1 << (int) (keys[0] & MASK), new Object[]{built}) : (Node) built;
+        return new PersistentLongMap<>(root, count);
+    }
+
+    /**
+     * Retrieves the value mapped to the key.
+     *
+     * @param key The key to look up.
+     * @return The value mapped to the key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Node node = this.root;
+        int shift = 0;
+        while (node != null) {
+            int bit = 1 << (int) ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a version of this map where the key is mapped to the value.
+     *
+     * @param key   The key.
+     * @param value The value, must not be null.
+     * @return The new version, this map is left unchanged.
+     */
+    public PersistentLongMap<V> put(long key, V value) {
+        boolean[] added = new boolean[1];
+        Node updated = put(this.root, 0, new Leaf(key, value), added);
+        return new PersistentLongMap<>(updated, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a version of this map without the key.
+     *
+     * @param key The key to remove.
+     * @return The new version, or this map if the key was not in it.
+     */
+    public PersistentLongMap<V> remove(long key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentLongMap<>(remove(this.root, 0, key), this.size - 1);
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Performs the action on every value of the map, in no particular order.
+     *
+     * @param action The action to perform.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        forEach(this.root, leaf -> action.accept((V) leaf.value));
+    }
+
+    /**
+     * Performs the action on every key whose value differs between an older version of the map and this one.
+     * Subtries the two versions share are skipped without being walked, so the cost follows the number of
+     * changes made in between rather than the size of the map. Values are compared by identity.
+     *
+     * @param older  The older version of the map.
+     * @param action The action to perform.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachDifference(PersistentLongMap<V> older, DifferenceAction<? super V> action) {
+        difference(older.root, this.root, (key, before, after) -> action.changed(key, (V) before, (V) after));
+    }
+
+    /**
+     * An action on a key whose value differs between two versions of a map.
+     *
+     * @param <V> The type of the values.
+     */
+    @FunctionalInterface
+    public interface DifferenceAction<V> {
+        /**
+         * Called for a key whose value changed.
+         *
+         * @param key    The key.
+         * @param before The value in the older version, or null if the key was added since.
+         * @param after  The value in the newer version, or null if the key was removed since.
+         */
+        void changed(long key, V before, V after);
+    }
+
+    /**
+     * Compares two subtries found at the same place of two versions, each a Node, a Leaf or null.
+     */
+    private static void difference(Object before, Object after, DifferenceAction<Object> action) {
+        if (before == after) {
+            return;
+        }
+        if (before instanceof Node && after instanceof Node) {
+            Node older = (Node) before;
+            Node newer = (Node) after;
+            int bits = older.bitmap | newer.bitmap;
+            while (bits != 0) {
+                int bit = bits & -bits;
+                bits &= bits - 1;
+                difference(child(older, bit), child(newer, bit), action);
+            }
+        } else if (before instanceof Node) {
+            Leaf leaf = (Leaf) after;
+            boolean[] found = new boolean[1];
+            forEach((Node) before, old -> {
+                if (leaf != null && old.key == leaf.key) {
+                    found[0] = true;
+                    if (old.value != leaf.value) {
+                        action.changed(old.key, old.value, leaf.value);
+                    }
+                } else {
+                    action.changed(old.key, old.value, null);
+                }
+            });
+            if (leaf != null && !found[0]) {
+                action.changed(leaf.key, null, leaf.value);
+            }
+        } else if (after instanceof Node) {
+            Leaf leaf = (Leaf) before;
+            boolean[] found = new boolean[1];
+            forEach((Node) after, current -> {
+                if (leaf != null && current.key == leaf.key) {
+                    found[0] = true;
+                    if (current.value != leaf.value) {
+                        action.changed(current.key, leaf.value, current.value);
+                    }
+                } else {
+                    action.changed(current.key, null, current.value);
+                }
+            });
+            if (leaf != null && !found[0]) {
+                action.changed(leaf.key, leaf.value, null);
+            }
+        } else {
+            Leaf older = (Leaf) before;
+            Leaf newer = (Leaf) after;
+            if (older != null && newer != null && older.key == newer.key) {
+                if (older.value != newer.value) {
+                    action.changed(older.key, older.value, newer.value);
+                }
+                return;
+            }
+            if (older != null) {
+                action.changed(older.key, older.value, null);
+            }
+            if (newer != null) {
+                action.changed(newer.key, null, newer.value);
+            }
+        }
+    }
+
+    private static Object child(Node node, int bit) {
+        return (node.bitmap & bit) != 0 ? node.slots[Integer.bitCount(node.bitmap & (bit - 1))] : null;
+    }
+
+    private static void forEach(Node node, Consumer<Leaf> action) {
+        if (node == null) {
+            return;
+        }
+        for (Object slot : node.slots) {
+            if (slot instanceof Leaf) {
+                action.accept((Leaf) slot);
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+
+    private static Node put(Node node, int shift, Leaf leaf, boolean[] added) {
+        int bit = 1 << (int) ((leaf.key >>> shift) & MASK);
+        if (node == null) {
+            added[0] = true;
+            return new Node(bit, new Object[]{leaf});
+        }
+        int position = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, position);
+            slots[position] = leaf;
+            System.arraycopy(node.slots, position, slots, position + 1, node.slots.length - position);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[position];
+        Object replacement;
+        if (slot instanceof Leaf) {
+            Leaf existing = (Leaf) slot;
+            if (existing.key == leaf.key) {
+                replacement = leaf;
+            } else {
+                added[0] = true;
+                replacement = merge(existing, leaf, shift + BITS);
+            }
+        } else {
+            replacement = put((Node) slot, shift + BITS, leaf, added);
+        }
+        Object[] slots = node.slots.clone();
+        slots[position] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * Builds the subtrie holding the entries order[from..to), whose keys agree on all the bits below the shift.
+     * The entries are sorted by the next five bits of their keys with a counting sort through scratch.
+     *
+     * @return A Leaf if there is a single entry, otherwise a Node.
+     */
+    private static Object build(long[] keys, Object[] values, int[] order, int[] scratch, int from, int to, int shift) {
+        if (to - from == 1 || shift >= Long.SIZE) {
+            int last = order[to - 1];
+            return new Leaf(keys[last], values[last]);
+        }
+        int[] starts = new int[MASK + 2];
+        for (int i = from; i < to; i++) {
+            starts[(int) ((keys[order[i]] >>> shift) & MASK) + 1]++;
+        }
+        int bitmap = 0;
+        int children = 0;
+        for (int index = 0; index <= MASK; index++) {
+            if (starts[index + 1] > 0) {
+                bitmap |= 1 << index;
+                children++;
+            }
+            starts[index + 1] += starts[index];
+        }
+        int[] next = starts.clone();
+        for (int i = from; i < to; i++) {
+            scratch[from + next[(int) ((keys[order[i]] >>> shift) & MASK)]++] = order[i];
+        }
+        System.arraycopy(scratch, from, order, from, to - from);
+        Object[] slots = new Object[children];
+        int slot = 0;
+        for (int index = 0; index <= MASK; index++) {
+            if (starts[index + 1] > starts[index]) {
+                slots[slot++] = build(keys, values, order, scratch, from + starts[index], from + starts[index + 1], shift + BITS);
+            }
+        }
+        return new Node(bitmap, slots);
+    }
+
+    /**
+     * Builds the smallest subtrie holding two leaves whose keys agree on all the bits below the shift.
+     */
+    private static Node merge(Leaf first, Leaf second, int shift) {
+        int firstIndex = (int) ((first.key >>> shift) & MASK);
+        int secondIndex = (int) ((second.key >>> shift) & MASK);
+        if (firstIndex == secondIndex) {
+            return new Node(1 << firstIndex, new Object[]{merge(first, second, shift + BITS)});
+        }
+        Object[] slots = firstIndex < secondIndex ? new Object[]{first, second} : new Object[]{second, first};
+        return new Node((1 << firstIndex) | (1 << secondIndex), slots);
+    }
+
+    private static Node remove(Node node, int shift, long key) {
+        int bit = 1 << (int) ((key >>> shift) & MASK);
+        int position = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[position];
+        Object replacement = null;
+        if (slot instanceof Node) {
+            Node child = remove((Node) slot, shift + BITS, key);
+            // A child left with a single leaf is folded back into this level
+            replacement = child != null && child.slots.length == 1 && child.slots[0] instanceof Leaf ? child.slots[0] : child;
+        }
+        if (replacement != null) {
+            Object[] slots = node.slots.clone();
+            slots[position] = replacement;
+            return new Node(node.bitmap, slots);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, position);
+        System.arraycopy(node.slots, position + 1, slots, position, slots.length - position);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots; // a Leaf or a Node per bit set in the bitmap
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Leaf {
+        private final long key;
+        private final Object value;
+
+        Leaf(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -8,6 +8,10 @@ public class Player implements Cloneable {
 
     private Room currentRoom;
 
+    private QuartNode<Room> currentNode; // Cursor on the node holding currentRoom, null until resolved
+
+    private long generation; // Clock reading at the last change of the room or the bag, see Generation
+
     /**
      * Constructs a Player object with a specified name and maximum number of items.
      *
@@ -18,7 +22,9 @@ public class Player implements Cloneable {
         this.name = name;
         this.maxItems = maxItems;
         this.currentRoom = null;
+        this.currentNode = null;
         this.bag = new Bag("Starting bag", 1, this.maxItems);
+        this.generation = Generation.next();
     }
 
     /**
@@ -52,6 +58,14 @@ public class Player implements Cloneable {
         return name;
     }
 
+    /**
+     * Retrieves the maximum number of items the player can carry.
+     * Returns The maximum number of items.
+     */
+    int getMaxItems() {
+        return this.maxItems;
+    }
+
     /**
      * Checks if the player's inventory is full.
      * Returns true if the inventory is full, false otherwise.
@@ -161,6 +175,7 @@ public class Player implements Cloneable {
      */
     public void movePlayer(Room room) {
         this.currentRoom = room;
+        this.generation = Generation.next();
     }
 
     /**
@@ -171,6 +186,23 @@ public class Player implements Cloneable {
         return this.currentRoom;
     }
 
+    /**
+     * Retrieves the node the player's cursor points at.
+     * Returns The node holding the current room, or null if the cursor is not resolved.
+     */
+    public QuartNode<Room> getCurrentNode() {
+        return this.currentNode;
+    }
+
+    /**
+     * Points the player's cursor at the node holding the current room.
+     *
+     * @param node The node holding the current room.
+     */
+    void setCurrentNode(QuartNode<Room> node) {
+        this.currentNode = node;
+    }
+
     /**
      * Retrieves the bag of the player.
      * Returns The bag of the player.
@@ -186,6 +218,17 @@ public class Player implements Cloneable {
      */
     public void setBag(Bag bag) {
         this.bag = bag;
+        this.generation = Generation.next();
+    }
+
+    /**
+     * Retrieves the generation of the player, which moves forward whenever the player moves,
+     * changes bags or the contents of its bag change.
+     *
+     * Returns The generation.
+     */
+    long getGeneration() {
+        return this.bag != null ? Math.max(this.generation, this.bag.getGeneration()) : this.generation;
     }
 
     /**
@@ -206,6 +249,8 @@ public class Player implements Cloneable {
 
     /**
      * Picks up the specified item.
+     * The item is taken from the room before it is put in the bag, so when players pick up the same item at once
+     * only the one whose removal succeeded gets it.
      *
      * @param item The item to pick up.
      */
@@ -215,9 +260,12 @@ public class Player implements Cloneable {
         boolean flag2 = this.isFullBag();
         boolean flag3 = this.canPick(item);
         if (flag1 && !flag2 && flag3) {
-            this.currentRoom.removeItem(item);
-            this.addItem(item);
-            System.out.println(this.getName() + " picked up " + item.getName() + " from " + this.currentRoom.getName() + ".");
+            if (this.currentRoom.removeItem(item)) {
+                this.addItem(item);
+                System.out.println(this.getName() + " picked up " + item.getName() + " from " + this.currentRoom.getName() + ".");
+            } else {
+                System.out.println(item.getName() + " is not in " + this.currentRoom.getName() + ".");
+            }
         } else if ((!flag1 && flag2) || (flag1 && flag2)) {
             System.out.println(this.getName() + "'s inventory is full.");
         } else if (!flag1) {
@@ -232,18 +280,16 @@ public class Player implements Cloneable {
 
     /**
      * Disassembles the specified item.
+     * The item only counts as disassembled if its removal succeeded, so when another player picks it up from the
+     * room at the same moment only one of them gets it.
      *
      * @param item The item to disassemble.
      */
     public void disassembleItem(Item item) {
         String name = item.getName();
-        boolean flag = this.isItemExist(item);
-        boolean flag1 = this.currentRoom.isItemExist(item);
-        if (flag) {
-            this.removeItem(item);
-            System.out.println(this.getName() + " disassembled " + item.getName() + ".");
-        } else if (flag1) {
-            this.currentRoom.removeItem(item);
+        boolean flag = this.isItemExist(item) && this.removeItem(item);
+        boolean flag1 = !flag && this.currentRoom.isItemExist(item) && this.currentRoom.removeItem(item);
+        if (flag || flag1) {
             System.out.println(this.getName() + " disassembled " + item.getName() + ".");
         } else {
             System.out.println(this.getName() + " could not disassemble " + item.getName() + ".");
@@ -253,6 +299,8 @@ public class Player implements Cloneable {
 
     /**
      * Drops the specified item.
+     * The item is put in the room before it leaves the bag, so it stays with the player if the room filled up
+     * in the meantime.
      *
      * @param item The item to drop.
      */
@@ -261,9 +309,12 @@ public class Player implements Cloneable {
         boolean roomFull = this.currentRoom.isRoomFull();
         boolean itemsExist = this.isItemExist(item);
         if (!roomFull && itemsExist) {
-            this.removeItem(item);
-            this.currentRoom.addItem(item);
-            System.out.println(this.getName() + " dropped " + item.getName() + " in " + this.currentRoom.getName() + ".");
+            if (this.currentRoom.addItem(item)) {
+                this.removeItem(item);
+                System.out.println(this.getName() + " dropped " + item.getName() + " in " + this.currentRoom.getName() + ".");
+            } else {
+                System.out.println(this.currentRoom.getName() + " is full.");
+            }
         } else if ((!itemsExist && roomFull) || (!itemsExist && !roomFull)) {
             System.out.println(item.getName() + " is not in " + this.getName() + "'s inventory.");
         } else {
@@ -305,23 +356,32 @@ public class Player implements Cloneable {
     public void resetPlayer() {
         this.emptyBag();
         this.currentRoom = null;
+        this.currentNode = null;
+        this.generation = Generation.next();
     }
     /**
      * Moves the player to a neighboring room in the specified direction.
+     * The player follows the links of the node it already stands on, and only looks the current room up
+     * in the list when the cursor no longer holds it.
      *
-     * @param list      The QuartlyLinkedList containing rooms and their connections.
+     * @param list      The QuartlyList containing rooms and their connections.
      * @param direction The direction in which to move the player.
      */
-    public void movePlayer(QuartlyLinkedList list,Direction direction){
+    public void movePlayer(QuartlyList<Room> list,Direction direction){
         Room room=this.currentRoom;
-        QuartNode<Room> node=list.getNode(this.currentRoom);
-        QuartNode<Room>  NewNode= node.getNeighbor(direction);
+        if (this.currentNode == null || this.currentNode.getValue() != this.currentRoom) {
+            this.currentNode = list.getNode(this.currentRoom);
+        }
+        QuartNode<Room> node=this.currentNode;
+        QuartNode<Room>  NewNode= node != null ? node.getNeighbor(direction) : null;
         if(NewNode !=null) {
             Room newRoom = NewNode.getValue();
             if (newRoom != null) {
                 if(!this.currentRoom.getRiddle())
                 {
                     this.currentRoom = newRoom;
+                    this.currentNode = NewNode;
+                    this.generation = Generation.next();
                     System.out.println(this.name + " moved from " + room.getName() + " to " + this.currentRoom.getName() + " via the " + Room.getDirectionString(direction) + " exit.");
                 }  else{
                     System.out.println(this.name+" could not move via the "+Room.getDirectionString(direction)+" exit.");
@@ -341,8 +401,14 @@ public class Player implements Cloneable {
     public Player clone() {
         try {
             Player clonedPlayer = (Player) super.clone();
-            clonedPlayer.currentRoom = this.currentRoom.clone();
-            clonedPlayer.bag = this.bag.clone();
+            if (this.currentRoom != null) {
+                clonedPlayer.currentRoom = this.currentRoom.clone();
+            }
+            // The cursor points into the original graph, the owner of the clone re-resolves it
+            clonedPlayer.currentNode = null;
+            if (this.bag != null) {
+                clonedPlayer.bag = this.bag.clone();
+            }
             return clonedPlayer;
         }catch (CloneNotSupportedException e){
             return null;
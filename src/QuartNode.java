@@ -1,5 +1,6 @@
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 /**
  * A node class representing an element in a QuartlyLinkedList with directional connections.
@@ -15,6 +16,13 @@ public class QuartNode<E extends Cloneable> implements Cloneable {
 
     private Direction entryDirection;
 
+    private int indexedHash; // Hash code of the value when the owning list last indexed this node
+
+    private int slot; // Dense index given by the owning list, 0 if the node does not belong to a list
+
+    private int x; // Grid column given by the owning list, growing to the east
+    private int y; // Grid row given by the owning list, growing to the north
+
     /**
      * Constructs a QuartNode with the given value and no connections.
      *
@@ -38,34 +46,39 @@ public class QuartNode<E extends Cloneable> implements Cloneable {
      * @throws DirectionIsOccupied if the specified direction is already occupied by another node.
      */
     public QuartNode(E value, Direction direction, QuartNode<E> other) throws DirectionIsOccupied {
-        Direction oppositeDirection = getOppositeDirection(direction);
-        if (other.getNeighbor(direction) == null) {
-            switch (direction) {
-                case NORTH:
-                    this.entryDirection = Direction.NORTH;
-                    this.south = other;
-                    other.north = this;
-                    break;
-                case SOUTH:
-                    this.entryDirection = Direction.SOUTH;
-                    this.north = other;
-                    other.south = this;
-                    break;
-                case EAST:
-                    this.entryDirection = Direction.EAST;
-                    this.west = other;
-                    other.east = this;
-                    break;
-                case WEST:
-                    this.entryDirection = Direction.WEST;
-                    this.east = other;
-                    other.west = this;
-                    break;
-            }
-            this.value = value;
-        } else {
+        attach(direction, other);
+        this.value = value;
+    }
+
+    /**
+     * Connects this node to another node, entering it from the specified direction of the other node.
+     *
+     * @param direction The direction of the other node in which this node is placed.
+     * @param other     The node to which this node is connected.
+     * @throws DirectionIsOccupied if the specified direction is already occupied by another node.
+     */
+    void attach(Direction direction, QuartNode<E> other) throws DirectionIsOccupied {
+        if (other.getNeighbor(direction) != null) {
             throw new DirectionIsOccupied();
         }
+        this.entryDirection = direction;
+        this.setNeighbor(getOppositeDirection(direction), other);
+        other.setNeighbor(direction, this);
+    }
+
+    /**
+     * Clears the node so that its owning list can hand it out again, holding the given value.
+     *
+     * @param value The value to be stored in the node.
+     */
+    void recycle(E value) {
+        this.disconnect();
+        this.value = value;
+        this.entryDirection = null;
+        this.indexedHash = 0;
+        this.slot = 0;
+        this.x = 0;
+        this.y = 0;
     }
 
     /**
@@ -122,15 +135,64 @@ public class QuartNode<E extends Cloneable> implements Cloneable {
         }
     }
 
-    private E cloneValue(E value) throws CloneNotSupportedException {
+    /**
+     * Copies the QuartNode while keeping its value, shared with this node.
+     *
+     * @return A copy of the QuartNode holding the same value.
+     */
+    @SuppressWarnings("unchecked")
+    QuartNode<E> copyNode() {
         try {
-            Method cloneMethod = value.getClass().getMethod("clone");
-            return (E) cloneMethod.invoke(value);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return (QuartNode<E>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Clones a value. A DeepCopyable value copies itself, any other value goes through its public clone method,
+     * whose handle is looked up once per class.
+     *
+     * @param value The value to clone.
+     * @param <T>   The type of the value.
+     * @return A copy of the value.
+     * @throws CloneNotSupportedException if the value has no public clone method.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Cloneable> T cloneValue(T value) throws CloneNotSupportedException {
+        if (value instanceof DeepCopyable) {
+            return (T) ((DeepCopyable<?>) value).deepCopy();
+        }
+        MethodHandle cloneMethod = CLONE_METHODS.get(value.getClass());
+        if (cloneMethod == null) {
             throw new CloneNotSupportedException("Clone method not found for class " + value.getClass().getName());
         }
+        try {
+            return (T) (Object) cloneMethod.invokeExact((Object) value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            CloneNotSupportedException failure = new CloneNotSupportedException("Clone failed for class " + value.getClass().getName());
+            failure.initCause(e);
+            throw failure;
+        }
     }
 
+    /**
+     * Handles of the public clone methods, typed as Object to Object, or null for a class without one.
+     */
+    private static final ClassValue<MethodHandle> CLONE_METHODS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.lookup().unreflect(type.getMethod("clone"))
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+    };
+
     /**
      * Disconnects the node from its neighboring nodes.
      */
@@ -153,6 +215,18 @@ public class QuartNode<E extends Cloneable> implements Cloneable {
         this.east = null;
         this.west = null;
     }
+    /**
+     * Creates an array of nodes, for the slot tables and node arrays of the lists.
+     *
+     * @param capacity The length of the array.
+     * @param <E>      The type of value stored in the nodes.
+     * @return An array of nulls.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <E extends Cloneable> QuartNode<E>[] newArray(int capacity) {
+        return (QuartNode<E>[]) new QuartNode[capacity];
+    }
+
     /**
      * Gets the opposite direction of the given direction.
      *
@@ -173,6 +247,71 @@ public class QuartNode<E extends Cloneable> implements Cloneable {
         return null;
     }
 
+    /**
+     * Returns the hash code the value had when the owning list last indexed this node.
+     *
+     * @return The indexed hash code.
+     */
+    int getIndexedHash() {
+        return this.indexedHash;
+    }
+
+    /**
+     * Records the hash code under which the owning list indexed this node.
+     *
+     * @param indexedHash The indexed hash code.
+     */
+    void setIndexedHash(int indexedHash) {
+        this.indexedHash = indexedHash;
+    }
+
+    /**
+     * Returns the dense index the owning list gave this node.
+     *
+     * @return The slot of the node, or 0 if the node does not belong to a list.
+     */
+    int getSlot() {
+        return this.slot;
+    }
+
+    /**
+     * Records the dense index the owning list gave this node.
+     *
+     * @param slot The slot of the node.
+     */
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the grid column of the node.
+     *
+     * @return The x coordinate.
+     */
+    public int getX() {
+        return this.x;
+    }
+
+    /**
+     * Returns the grid row of the node.
+     *
+     * @return The y coordinate.
+     */
+    public int getY() {
+        return this.y;
+    }
+
+    /**
+     * Places the node on the grid of the owning list.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     */
+    void setCoordinates(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
     public Direction getEntryDirection(){
         return this.entryDirection;
     }
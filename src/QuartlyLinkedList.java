@@ -1,13 +1,81 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class QuartlyLinkedList<E extends Cloneable> implements QuartlyList<E> {
+    private static final int MAX_SPARE_NODES = 1024; // removed nodes kept for reuse
+    private static final Direction[] DIRECTIONS = Direction.values();
 
-public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNode<E>>, Cloneable {
     private QuartNode<E> root;
 
+    // Index of the nodes by the exact value instance they hold, immune to hash code changes of the value.
+    private Map<E, QuartNode<E>> identityIndex;
+    // Index of the nodes by the hash code their value had when it was last filed, null until the first lookup
+    // of a list filled in bulk needs it.
+    private Map<Integer, List<QuartNode<E>>> hashIndex;
+    // Index of the nodes by the grid cell they occupy.
+    private CoordinateMap<E> cells;
+    // Next dense index handed to a node, slot 0 is kept for nodes outside the list.
+    private int nextSlot;
+    // Nodes by slot, null for a slot whose node was removed.
+    private QuartNode<E>[] nodesBySlot;
+    // Slots of removed nodes, handed out again before nextSlot.
+    private int[] freeSlots;
+    private int freeSlotCount;
+    // Removed nodes waiting to be handed out again.
+    private ArrayDeque<QuartNode<E>> spareNodes;
+    // Traversal buffers waiting to be lent to the next iterator, taken with getAndSet so that each goes to one
+    // traversal at a time even when several threads iterate at once.
+    private final AtomicReference<long[]> spareMarks;
+    private final AtomicReference<ArrayDeque<QuartNode<E>>> spareStack;
+    // Route search with scratch buffers kept between searches, created on first use.
+    private PathFinder<E> pathFinder;
+    // Which nodes are still connected to each other.
+    private Connectivity<E> connectivity;
+    // Told about every group of nodes a removal cuts off from the root, may be null.
+    private Consumer<List<QuartNode<E>>> orphanListener;
+
     /**
      * Constructs an empty QuartlyLinkedList.
      */
     public QuartlyLinkedList() {
         this.root = null;
+        this.identityIndex = new IdentityHashMap<>();
+        this.hashIndex = new HashMap<>();
+        this.cells = new CoordinateMap<>(this::nodeOfSlot);
+        this.nextSlot = 1;
+        this.nodesBySlot = QuartNode.newArray(16);
+        this.freeSlots = new int[16];
+        this.freeSlotCount = 0;
+        this.spareNodes = new ArrayDeque<>();
+        this.connectivity = new Connectivity<>();
+        this.orphanListener = null;
+        this.spareMarks = new AtomicReference<>();
+        this.spareStack = new AtomicReference<>();
+    }
+
+    /**
+     * Constructs an empty QuartlyLinkedList whose indexes are sized for the given number of nodes up front,
+     * so that filling it, for instance from a world file, never rehashes or grows them.
+     * The hash index is left to the first lookup by a value that is not the very instance a node holds, since
+     * a list filled in bulk is mostly looked up by its own values, and the index costs a few objects per node.
+     *
+     * @param expectedSize the number of nodes the list is about to receive
+     */
+    QuartlyLinkedList(int expectedSize) {
+        this();
+        this.identityIndex = new IdentityHashMap<>(expectedSize);
+        this.hashIndex = null;
+        this.cells = new CoordinateMap<>(expectedSize, this::nodeOfSlot);
+        this.nodesBySlot = QuartNode.newArray(Math.max(16, expectedSize + 1));
+        this.connectivity = new Connectivity<>(expectedSize + 1);
     }
 
     /**
@@ -30,46 +98,310 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
         return null;
     }
 
+    /**
+     * Returns the change in the x coordinate when moving one cell in the given direction.
+     *
+     * @param direction the direction of the move
+     * @return the change in the x coordinate
+     */
+    public static int deltaX(Direction direction) {
+        switch (direction) {
+            case EAST:
+                return 1;
+            case WEST:
+                return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the change in the y coordinate when moving one cell in the given direction.
+     *
+     * @param direction the direction of the move
+     * @return the change in the y coordinate
+     */
+    public static int deltaY(Direction direction) {
+        switch (direction) {
+            case NORTH:
+                return 1;
+            case SOUTH:
+                return -1;
+        }
+        return 0;
+    }
+
     /**
      * Adds a new node with the specified value in the specified direction relative to the target value.
+     * The new node takes the grid cell next to the target and is linked to every occupied cell around it.
      *
      * @param toInsert  the value to insert
      * @param target    the value to insert relative to
      * @param direction the direction relative to the target value
      * @throws NoSuchElement     if the target value does not exist in the list
-     * @throws DirectionIsOccupied if the direction is already occupied in the target node
+     * @throws DirectionIsOccupied if the direction is already occupied in the target node, or the cell is taken
      */
     public void add(E toInsert, E target, Direction direction) throws NoSuchElement, DirectionIsOccupied {
         if (isEmpty()) {
-            this.root = new QuartNode<>(toInsert);
+            this.root = newNode(toInsert);
+            index(this.root);
+            this.connectivity.added(this.root);
         } else {
             QuartNode<E> targetNode = getNode(target);
             if (targetNode == null) {
                 throw new NoSuchElement();
             }
-            try {
-                new QuartNode<>(toInsert, direction, targetNode);
-            } catch (DirectionIsOccupied e) {
-                throw e;
+            addNextTo(toInsert, targetNode, direction);
+        }
+    }
+
+    /**
+     * Adds a new node next to a node of the list that the caller already holds, skipping the lookup of the target.
+     *
+     * @param toInsert   the value to insert
+     * @param targetNode the node of this list to insert relative to
+     * @param direction  the direction relative to the target node
+     * @return the new node
+     * @throws DirectionIsOccupied if the direction is already occupied in the target node, or the cell is taken
+     */
+    QuartNode<E> addNextTo(E toInsert, QuartNode<E> targetNode, Direction direction) throws DirectionIsOccupied {
+        int x = targetNode.getX() + deltaX(direction);
+        int y = targetNode.getY() + deltaY(direction);
+        if (this.cells.get(x, y) != null) {
+            throw new DirectionIsOccupied();
+        }
+        QuartNode<E> node = newNode(toInsert);
+        try {
+            node.attach(direction, targetNode);
+        } catch (DirectionIsOccupied e) {
+            releaseNode(node);
+            throw e;
+        }
+        node.setCoordinates(x, y);
+        linkAdjacentCells(node);
+        index(node);
+        this.connectivity.added(node);
+        return node;
+    }
+
+    /**
+     * Adds a new node in the given cell of the grid, linked to every occupied cell around it.
+     * The node may be linked to no other node at all; the first node added to an empty list becomes its root.
+     *
+     * @param toInsert the value to insert
+     * @param x        the x coordinate of the cell
+     * @param y        the y coordinate of the cell
+     * @return the new node
+     * @throws DirectionIsOccupied if the cell is taken
+     */
+    QuartNode<E> addAt(E toInsert, int x, int y) throws DirectionIsOccupied {
+        if (this.cells.get(x, y) != null) {
+            throw new DirectionIsOccupied();
+        }
+        QuartNode<E> node = newNode(toInsert);
+        node.setCoordinates(x, y);
+        linkAdjacentCells(node);
+        index(node);
+        this.connectivity.added(node);
+        if (this.root == null) {
+            this.root = node;
+        }
+        return node;
+    }
+
+    /**
+     * Hands out a node holding the value, reusing a removed node when one is spare.
+     *
+     * @param value the value of the node
+     * @return a node without neighbors holding the value
+     */
+    private QuartNode<E> newNode(E value) {
+        QuartNode<E> node = this.spareNodes.poll();
+        if (node == null) {
+            return new QuartNode<>(value);
+        }
+        node.recycle(value);
+        return node;
+    }
+
+    /**
+     * Keeps a node that left the list so that a later insert can reuse it.
+     *
+     * @param node the node that left the list
+     */
+    private void releaseNode(QuartNode<E> node) {
+        node.recycle(null);
+        if (this.spareNodes.size() < MAX_SPARE_NODES) {
+            this.spareNodes.push(node);
+        }
+    }
+
+    /**
+     * Retrieves the node occupying the specified grid cell.
+     * The root sits at (0, 0), x grows to the east and y grows to the north.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the node occupying the cell, or null if the cell is empty
+     */
+    public QuartNode<E> getNodeAt(int x, int y) {
+        return this.cells.get(x, y);
+    }
+
+    /**
+     * Links a freshly placed node to the nodes already occupying the cells around it.
+     *
+     * @param node the freshly placed node
+     */
+    private void linkAdjacentCells(QuartNode<E> node) {
+        for (Direction direction : Direction.values()) {
+            if (node.getNeighbor(direction) == null) {
+                QuartNode<E> adjacent = this.cells.get(node.getX() + deltaX(direction), node.getY() + deltaY(direction));
+                if (adjacent != null && adjacent.getNeighbor(getOppositeDirection(direction)) == null) {
+                    node.setNeighbor(direction, adjacent);
+                    adjacent.setNeighbor(getOppositeDirection(direction), node);
+                }
             }
         }
     }
 
     /**
      * Retrieves the node containing the specified value.
+     * The exact instance is looked up first, then any value equal to it.
      *
      * @param value the value to search for
      * @return the node containing the value, or null if not found
      */
     public QuartNode<E> getNode(E value) {
-        for (QuartNode<E> node : this) {
-            if (node.getValue().equals(value)) {
-                return node;
+        if (value == null) {
+            return null;
+        }
+        QuartNode<E> node = this.identityIndex.get(value);
+        if (node != null) {
+            if (node.getIndexedHash() != value.hashCode()) {
+                unfile(node);
+                file(node);
+            }
+            return node;
+        }
+        if (this.hashIndex == null) {
+            buildHashIndex();
+        }
+        List<QuartNode<E>> bucket = this.hashIndex.get(value.hashCode());
+        if (bucket == null) {
+            return null;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            QuartNode<E> candidate = bucket.get(i);
+            if (candidate.getIndexedHash() != candidate.getValue().hashCode()) {
+                // The value changed since it was filed, move it to the bucket of its current hash code.
+                unfile(candidate);
+                file(candidate);
+                i--;
+            } else if (candidate.getValue().equals(value)) {
+                return candidate;
             }
         }
         return null;
     }
 
+    /**
+     * Adds the node to the value indexes and the grid.
+     *
+     * @param node the node to index
+     */
+    private void index(QuartNode<E> node) {
+        int slot;
+        if (this.freeSlotCount > 0) {
+            slot = this.freeSlots[--this.freeSlotCount];
+        } else {
+            if (this.nextSlot == this.nodesBySlot.length) {
+                this.nodesBySlot = Arrays.copyOf(this.nodesBySlot, this.nextSlot * 2);
+            }
+            slot = this.nextSlot++;
+        }
+        this.nodesBySlot[slot] = node;
+        node.setSlot(slot);
+        this.identityIndex.put(node.getValue(), node);
+        file(node);
+        this.cells.put(node);
+    }
+
+    /**
+     * Retrieves the node of a slot, for the grid index.
+     *
+     * @param slot the slot
+     * @return the node holding the slot, or null if the slot is free
+     */
+    private QuartNode<E> nodeOfSlot(int slot) {
+        return this.nodesBySlot[slot];
+    }
+
+    /**
+     * Removes the node from the value indexes and the grid.
+     *
+     * @param node the node to drop from the indexes
+     */
+    private void unindex(QuartNode<E> node) {
+        this.identityIndex.remove(node.getValue());
+        unfile(node);
+        this.cells.remove(node);
+        this.nodesBySlot[node.getSlot()] = null;
+        if (this.freeSlotCount == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotCount * 2);
+        }
+        this.freeSlots[this.freeSlotCount++] = node.getSlot();
+        node.setSlot(0);
+    }
+
+    /**
+     * Files the node in the hash index under the current hash code of its value.
+     *
+     * @param node the node to file
+     */
+    private void file(QuartNode<E> node) {
+        int hash = node.getValue().hashCode();
+        node.setIndexedHash(hash);
+        if (this.hashIndex != null) {
+            this.hashIndex.computeIfAbsent(hash, h -> new ArrayList<>(1)).add(node);
+        }
+    }
+
+    /**
+     * Builds the hash index of a list filled in bulk, filing every node under the current hash code of its value.
+     */
+    private void buildHashIndex() {
+        this.hashIndex = new HashMap<>(this.identityIndex.size() * 4 / 3 + 1);
+        for (int slot = 1; slot < this.nextSlot; slot++) {
+            if (this.nodesBySlot[slot] != null) {
+                file(this.nodesBySlot[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes the node from the hash index bucket it was last filed under.
+     *
+     * @param node the node to unfile
+     */
+    private void unfile(QuartNode<E> node) {
+        if (this.hashIndex == null) {
+            return;
+        }
+        List<QuartNode<E>> bucket = this.hashIndex.get(node.getIndexedHash());
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i) == node) {
+                bucket.remove(i);
+                break;
+            }
+        }
+        if (bucket.isEmpty()) {
+            this.hashIndex.remove(node.getIndexedHash());
+        }
+    }
+
     /**
      * Checks if the list is empty.
      *
@@ -81,6 +413,9 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
 
     /**
      * Removes the node containing the specified value from the list.
+     * When the root is removed, its first neighbor in direction order becomes the new root. Groups of nodes that
+     * the removal cuts off from the root are handed to the orphan listener. The removed node is cleared and may
+     * be reused by a later insert, so callers must not keep nodes of removed values.
      *
      * @param toRemove the value to remove
      * @throws NoSuchElement if the specified value does not exist in the list
@@ -88,13 +423,95 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
     public void remove(E toRemove) throws NoSuchElement {
         QuartNode<E> targetNode = getNode(toRemove);
         if (targetNode != null) {
+            List<QuartNode<E>> neighbors = new ArrayList<>(4);
+            for (Direction direction : Direction.values()) {
+                if (targetNode.getNeighbor(direction) != null) {
+                    neighbors.add(targetNode.getNeighbor(direction));
+                }
+            }
+            if (this.root == targetNode) {
+                this.root = neighbors.isEmpty() ? null : neighbors.get(0);
+            }
             targetNode.disconnect();
-            targetNode.setValue(null);
+            List<List<QuartNode<E>>> orphans = this.connectivity.removed(targetNode, neighbors, this.root);
+            unindex(targetNode);
+            releaseNode(targetNode);
+            if (this.root == null) {
+                this.root = anyNode();
+            }
+            if (this.connectivity.elementCount() > 2 * size() + 64) {
+                rebuildConnectivity();
+            }
+            if (this.orphanListener != null) {
+                for (List<QuartNode<E>> orphan : orphans) {
+                    this.orphanListener.accept(orphan);
+                }
+            }
         } else {
             throw new NoSuchElement();
         }
     }
 
+    /**
+     * Finds any node still in the list.
+     *
+     * @return a node of the list, or null if the list is empty
+     */
+    private QuartNode<E> anyNode() {
+        for (int slot = 1; slot < this.nextSlot && !this.identityIndex.isEmpty(); slot++) {
+            if (this.nodesBySlot[slot] != null) {
+                return this.nodesBySlot[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds the connectivity tracking from the live nodes, dropping the union-find elements left behind by
+     * removals so that churn does not grow it.
+     */
+    private void rebuildConnectivity() {
+        this.connectivity = new Connectivity<>();
+        for (int slot = 1; slot < this.nextSlot; slot++) {
+            if (this.nodesBySlot[slot] != null) {
+                this.connectivity.added(this.nodesBySlot[slot]);
+            }
+        }
+    }
+
+    /**
+     * Checks if the nodes holding the two values are joined by a path of links.
+     *
+     * @param first  the first value
+     * @param second the second value
+     * @return true if both values exist and are connected, otherwise false
+     */
+    public boolean isConnected(E first, E second) {
+        QuartNode<E> firstNode = getNode(first);
+        QuartNode<E> secondNode = getNode(second);
+        return firstNode != null && secondNode != null && this.connectivity.connected(firstNode, secondNode);
+    }
+
+    /**
+     * Checks if the node holding the value can be reached from the root, and so is visited by the iterator.
+     *
+     * @param value the value to check
+     * @return true if the value exists and is connected to the root, otherwise false
+     */
+    public boolean isReachable(E value) {
+        QuartNode<E> node = getNode(value);
+        return node != null && this.root != null && this.connectivity.connected(node, this.root);
+    }
+
+    /**
+     * Sets the listener told about every group of nodes a removal cuts off from the root.
+     *
+     * @param orphanListener the listener, or null for none
+     */
+    public void setOrphanListener(Consumer<List<QuartNode<E>>> orphanListener) {
+        this.orphanListener = orphanListener;
+    }
+
     /**
      * Retrieves the root node of the list.
      *
@@ -111,7 +528,159 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
      */
     @Override
     public Iterator<QuartNode<E>> iterator() {
-        return new QuartlyLinkedListIterator<>(this.root);
+        int words = (this.nextSlot + 63) >>> 6;
+        // Nested and concurrent traversals find no spare buffers and get their own
+        long[] marks = this.spareMarks.getAndSet(null);
+        if (marks == null || marks.length < words) {
+            marks = new long[Math.max(words, 1)];
+        }
+        ArrayDeque<QuartNode<E>> stack = this.spareStack.getAndSet(null);
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+        }
+        return new QuartlyLinkedListIterator<>(this, this.root, marks, stack);
+    }
+
+    /**
+     * Finds a shortest sequence of moves from one value to another.
+     *
+     * @param from the value to start from
+     * @param to   the value to reach
+     * @return the directions to follow, empty if both values share a node, or null if no route exists
+     * @throws NoSuchElement if either value does not exist in the list
+     */
+    public List<Direction> findPath(E from, E to) throws NoSuchElement {
+        return findPath(from, to, value -> true);
+    }
+
+    /**
+     * Finds a shortest sequence of moves from one value to another, where a walker may only step out of
+     * the nodes whose value passes the gate.
+     *
+     * @param from     the value to start from
+     * @param to       the value to reach
+     * @param canLeave tells whether a walker may leave the node holding a value
+     * @return the directions to follow, empty if both values share a node, or null if no route exists
+     * @throws NoSuchElement if either value does not exist in the list
+     */
+    public List<Direction> findPath(E from, E to, Predicate<? super E> canLeave) throws NoSuchElement {
+        QuartNode<E> fromNode = getNode(from);
+        QuartNode<E> toNode = getNode(to);
+        if (fromNode == null || toNode == null) {
+            throw new NoSuchElement();
+        }
+        if (this.pathFinder == null) {
+            this.pathFinder = new PathFinder<>();
+        }
+        return this.pathFinder.find(this.nodesBySlot, this.nextSlot, fromNode, toNode, canLeave);
+    }
+
+    /**
+     * Returns the number of nodes in the list.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return this.identityIndex.size();
+    }
+
+    /**
+     * Returns a spliterator over every node of the list, splitting by ranges of node slots.
+     * The list must not be modified while the spliterator is in use.
+     *
+     * @return a sized spliterator over the nodes
+     */
+    @Override
+    public Spliterator<QuartNode<E>> spliterator() {
+        return new QuartlyLinkedListSpliterator<>(this.nodesBySlot, this.nextSlot, size());
+    }
+
+    /**
+     * Returns a sequential stream over every node of the list.
+     *
+     * @return a stream of the nodes
+     */
+    public Stream<QuartNode<E>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over every node of the list.
+     *
+     * @return a parallel stream of the nodes
+     */
+    public Stream<QuartNode<E>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Returns a sequential stream over every value of the list.
+     *
+     * @return a stream of the values
+     */
+    public Stream<E> valueStream() {
+        return stream().map(QuartNode::getValue);
+    }
+
+    /**
+     * Maps every value reachable from the root and combines the results, splitting the graph among the
+     * workers of the common ForkJoinPool. The list must not be modified while the reduction runs.
+     *
+     * @param identity the identity of the combiner
+     * @param mapper   the function applied to each value
+     * @param combiner the associative function combining two results
+     * @param <R>      the type of the result
+     * @return the combined result, or identity if the list is empty
+     */
+    public <R> R parallelReduce(R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner) {
+        return parallelReduce(ForkJoinPool.commonPool(), identity, mapper, combiner);
+    }
+
+    /**
+     * Maps every value reachable from the root and combines the results, splitting the graph among the
+     * workers of the given pool. The list must not be modified while the reduction runs.
+     *
+     * @param pool     the pool running the traversal
+     * @param identity the identity of the combiner
+     * @param mapper   the function applied to each value
+     * @param combiner the associative function combining two results
+     * @param <R>      the type of the result
+     * @return the combined result, or identity if the list is empty
+     */
+    public <R> R parallelReduce(ForkJoinPool pool, R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner) {
+        if (isEmpty()) {
+            return identity;
+        }
+        return pool.invoke(new ParallelTraversalTask<>(this.root, this.nextSlot, identity, mapper, combiner));
+    }
+
+    /**
+     * Performs the action on every value reachable from the root, in no particular order and possibly
+     * on several threads at once. The list must not be modified meanwhile.
+     *
+     * @param action the action to perform on each value, must be safe to call concurrently
+     */
+    public void parallelForEach(Consumer<? super E> action) {
+        parallelReduce(null, value -> {
+            action.accept(value);
+            return null;
+        }, (left, right) -> null);
+    }
+
+    /**
+     * Takes back the buffers of a finished traversal so the next one can reuse them.
+     *
+     * @param marks the visited bitset of the traversal
+     * @param stack the stack of the traversal
+     */
+    void releaseTraversalBuffers(long[] marks, ArrayDeque<QuartNode<E>> stack) {
+        Arrays.fill(marks, 0L);
+        stack.clear();
+        long[] spare = this.spareMarks.get();
+        if (spare == null || spare.length < marks.length) {
+            this.spareMarks.compareAndSet(spare, marks);
+        }
+        this.spareStack.compareAndSet(null, stack);
     }
 
     /**
@@ -121,30 +690,114 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
      */
     @Override
     public QuartlyLinkedList<E> clone() {
+        return copy(false, false);
+    }
 
-            QuartlyLinkedList<E> clonedList = new QuartlyLinkedList<>();
-            if (this.root != null) {
-                Map<QuartNode<E>, QuartNode<E>> clonedNodesMap = new HashMap<>();
-                QuartNode<E> clonedRoot = this.root.clone();
-                clonedList.root = clonedRoot;
-                clonedNodesMap.put(this.root, clonedRoot);
-                for (QuartNode<E> originalNode : this) {
-                    QuartNode<E> clonedNode = clonedNodesMap.get(originalNode);
-                    for (Direction direction : Direction.values()) {
-                        QuartNode<E> originalNeighbor = originalNode.getNeighbor(getOppositeDirection(direction));
-                        if (originalNeighbor != null) {
-                            QuartNode<E> clonedNeighbor = clonedNodesMap.get(originalNeighbor);
-                            if (clonedNeighbor == null) {
-                                clonedNeighbor = originalNeighbor.clone();
-                                clonedNodesMap.put(originalNeighbor, clonedNeighbor);
-                            }
-                            clonedNode.setNeighbor(getOppositeDirection(direction), clonedNeighbor);
-                            clonedNeighbor.setNeighbor(direction, clonedNode);
-                        }
-                    }
+    /**
+     * Creates a copy of this list with the same layout whose nodes hold the very same values as this list.
+     * Only the nodes are copied, so it costs far less than clone when the values are large.
+     *
+     * @return a copy of this list sharing its values
+     */
+    public QuartlyLinkedList<E> cloneSharingValues() {
+        return copy(true, false);
+    }
+
+    /**
+     * Replaces the value held by a node, keeping the node where it is.
+     *
+     * @param oldValue the value held by the node now
+     * @param newValue the value to hold instead
+     * @return true if a node held the old value, otherwise false
+     */
+    public boolean replaceValue(E oldValue, E newValue) {
+        QuartNode<E> node = this.identityIndex.get(oldValue);
+        if (node == null) {
+            return false;
+        }
+        this.identityIndex.remove(oldValue);
+        unfile(node);
+        node.setValue(newValue);
+        this.identityIndex.put(newValue, node);
+        file(node);
+        return true;
+    }
+
+    /**
+     * Creates a copy of this list, cloning the values on all cores. Worth it for very large lists only.
+     *
+     * @return a cloned instance of this list
+     */
+    public QuartlyLinkedList<E> parallelClone() {
+        return copy(false, true);
+    }
+
+    /**
+     * Copies this list, nodes that were cut off from the root included.
+     * The copy keeps the slot of every node, so the table of nodes by slot serves as the map from original nodes
+     * to copies: the values are copied in one pass over the table, and each copy then takes its links from its
+     * original through the slots of the neighbors. The grid, the hash index and the connectivity are carried over
+     * the same way instead of being rebuilt.
+     *
+     * @param shareValues true to keep the values of this list in the copied nodes, false to clone them
+     * @param parallel    true to copy and link the nodes on all cores
+     * @return the copy
+     */
+    private QuartlyLinkedList<E> copy(boolean shareValues, boolean parallel) {
+        QuartlyLinkedList<E> clonedList = new QuartlyLinkedList<>();
+        if (this.root == null) {
+            return clonedList;
+        }
+        QuartNode<E>[] originals = this.nodesBySlot;
+        QuartNode<E>[] copies = QuartNode.newArray(originals.length);
+        IntStream slots = IntStream.range(1, this.nextSlot);
+        if (parallel) {
+            slots = slots.parallel();
+        }
+        slots.forEach(slot -> {
+            if (originals[slot] != null) {
+                copies[slot] = shareValues ? originals[slot].copyNode() : originals[slot].clone();
+            }
+        });
+        slots = IntStream.range(1, this.nextSlot);
+        if (parallel) {
+            slots = slots.parallel();
+        }
+        slots.forEach(slot -> {
+            QuartNode<E> original = originals[slot];
+            if (original != null) {
+                for (Direction direction : DIRECTIONS) {
+                    QuartNode<E> neighbor = original.getNeighbor(direction);
+                    copies[slot].setNeighbor(direction, neighbor != null ? copies[neighbor.getSlot()] : null);
                 }
             }
-            return clonedList;
+        });
+        clonedList.nodesBySlot = copies;
+        clonedList.nextSlot = this.nextSlot;
+        clonedList.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlots.length);
+        clonedList.freeSlotCount = this.freeSlotCount;
+        clonedList.root = copies[this.root.getSlot()];
+        clonedList.identityIndex = new IdentityHashMap<>(this.identityIndex.size());
+        for (int slot = 1; slot < this.nextSlot; slot++) {
+            if (copies[slot] != null) {
+                clonedList.identityIndex.put(copies[slot].getValue(), copies[slot]);
+            }
+        }
+        if (this.hashIndex != null) {
+            clonedList.hashIndex = new HashMap<>(this.hashIndex.size() * 4 / 3 + 1);
+            for (Map.Entry<Integer, List<QuartNode<E>>> bucket : this.hashIndex.entrySet()) {
+                List<QuartNode<E>> clonedBucket = new ArrayList<>(bucket.getValue().size());
+                for (QuartNode<E> node : bucket.getValue()) {
+                    clonedBucket.add(copies[node.getSlot()]);
+                }
+                clonedList.hashIndex.put(bucket.getKey(), clonedBucket);
+            }
+        } else {
+            clonedList.hashIndex = null;
+        }
+        clonedList.cells = this.cells.copy(clonedList::nodeOfSlot);
+        clonedList.connectivity = this.connectivity.copy();
+        return clonedList;
     }
 
     /**
@@ -154,11 +807,6 @@ public class QuartlyLinkedList<E extends Cloneable> implements Iterable<QuartNod
      * @return true if a node with the specified value exists, otherwise false
      */
     public boolean isExist(E value) {
-        for (QuartNode<E> node : this) {
-            if (node.getValue().equals(value)) {
-                return true;
-            }
-        }
-        return false;
+        return getNode(value) != null;
     }
 }
@@ -1,18 +1,57 @@
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.Stack;
-
 
+/**
+ * Depth first iterator over the nodes of a QuartlyLinkedList, checking the neighbors of each node
+ * in the order of Direction (north, east, south, west).
+ * When created by its list, visited nodes are marked in a bitset indexed by the slot of the node and both the
+ * bitset and the stack are borrowed from the list, so a traversal does not allocate per step.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ */
 public class QuartlyLinkedListIterator<E extends Cloneable> implements Iterator<QuartNode<E>> {
-    private Set<QuartNode<E>> visited;
-    private Stack<QuartNode<E>> stack;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final QuartlyLinkedList<E> owner; // list lending the buffers, null for a standalone traversal
+    private long[] marks; // visited bitset indexed by node slot
+    private Set<QuartNode<E>> visited; // visited nodes without a slot, created on demand
+    private ArrayDeque<QuartNode<E>> stack;
     private QuartNode<E> nextNode;
 
+    /**
+     * Constructs a standalone iterator starting at the given node.
+     *
+     * @param nextNode The node to start from.
+     */
     public QuartlyLinkedListIterator(QuartNode<E> nextNode){
+        this.owner = null;
         this.nextNode = nextNode;
-        visited = new HashSet<>();
-        stack = new Stack<>();
+        this.marks = null;
+        this.visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.stack = new ArrayDeque<>();
+    }
+
+    /**
+     * Constructs an iterator that works with buffers lent by its list.
+     *
+     * @param owner    The list lending the buffers.
+     * @param nextNode The node to start from.
+     * @param marks    A cleared bitset large enough for every slot of the list.
+     * @param stack    An empty stack.
+     */
+    QuartlyLinkedListIterator(QuartlyLinkedList<E> owner, QuartNode<E> nextNode, long[] marks, ArrayDeque<QuartNode<E>> stack) {
+        this.owner = owner;
+        this.nextNode = nextNode;
+        this.marks = marks;
+        this.visited = null;
+        this.stack = stack;
+        if (nextNode == null) {
+            release();
+        }
     }
 
     @Override
@@ -23,22 +62,22 @@ public class QuartlyLinkedListIterator<E extends Cloneable> implements Iterator<
 
     @Override
     public QuartNode<E> next(){
+        if (nextNode == null) {
+            throw new NoSuchElementException();
+        }
         QuartNode<E> prev = nextNode;
 
-        // Push nextNode to stack and add it to visited list
+        // Push nextNode to stack and mark it as visited
         stack.push(prev);
-        visited.add(prev);
-
-        // Define the order of checking neighbors
-        Direction[] directions = Direction.values();
+        visit(prev);
 
         while (!stack.isEmpty()) {
             QuartNode<E> current = stack.peek();
-            for (Direction direction : directions) {
+            for (Direction direction : DIRECTIONS) {
                 QuartNode<E> neighbor = current.getNeighbor(direction);
-                if (neighbor != null && !visited.contains(neighbor)) {
+                if (neighbor != null && !isVisited(neighbor)) {
                     stack.push(neighbor);
-                    visited.add(neighbor);
+                    visit(neighbor);
                     nextNode = neighbor;
                     return prev;
                 }
@@ -48,6 +87,49 @@ public class QuartlyLinkedListIterator<E extends Cloneable> implements Iterator<
 
         // No more nodes left to traverse
         nextNode = null;
+        release();
         return prev;
     }
+
+    /**
+     * Marks the node as visited.
+     *
+     * @param node The node to mark.
+     */
+    private void visit(QuartNode<E> node) {
+        int slot = node.getSlot();
+        if (this.marks != null && slot > 0 && slot < (this.marks.length << 6)) {
+            this.marks[slot >>> 6] |= 1L << slot;
+        } else {
+            if (this.visited == null) {
+                this.visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            this.visited.add(node);
+        }
+    }
+
+    /**
+     * Checks if the node was visited.
+     *
+     * @param node The node to check.
+     * @return true if the node was visited, otherwise false.
+     */
+    private boolean isVisited(QuartNode<E> node) {
+        int slot = node.getSlot();
+        if (this.marks != null && slot > 0 && slot < (this.marks.length << 6)) {
+            return (this.marks[slot >>> 6] & (1L << slot)) != 0;
+        }
+        return this.visited != null && this.visited.contains(node);
+    }
+
+    /**
+     * Hands the borrowed buffers back to the list once the traversal is over.
+     */
+    private void release() {
+        if (this.owner != null && this.marks != null) {
+            this.owner.releaseTraversalBuffers(this.marks, this.stack);
+            this.marks = null;
+            this.stack = null;
+        }
+    }
 }
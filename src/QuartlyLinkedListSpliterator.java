@@ -0,0 +1,97 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the nodes of a QuartlyLinkedList, walking the table of nodes by slot.
+ * It splits by halving its range of slots, so parallel streams divide the graph evenly.
+ * Slots of removed nodes are skipped; while there are none, every split knows its exact size.
+ *
+ * @param <E> The type of value stored in the nodes, must extend Cloneable.
+ */
+class QuartlyLinkedListSpliterator<E extends Cloneable> implements Spliterator<QuartNode<E>> {
+    private final QuartNode<E>[] nodes; // nodes by slot, null for a free slot
+    private int index; // next slot to visit
+    private final int fence; // one past the last slot to visit
+    private long estimate;
+    private boolean sized; // true if estimate is the exact number of nodes left
+    private final boolean dense; // true if no slot in the table is free, so every split is sized as well
+
+    /**
+     * Constructs a spliterator over all the nodes of a list.
+     *
+     * @param nodes The table of nodes by slot.
+     * @param fence One past the last slot handed out.
+     * @param size  The number of nodes in the list.
+     */
+    QuartlyLinkedListSpliterator(QuartNode<E>[] nodes, int fence, int size) {
+        this(nodes, 1, fence, size, true, size == fence - 1);
+    }
+
+    private QuartlyLinkedListSpliterator(QuartNode<E>[] nodes, int index, int fence, long estimate, boolean sized, boolean dense) {
+        this.nodes = nodes;
+        this.index = index;
+        this.fence = fence;
+        this.estimate = estimate;
+        this.sized = sized;
+        this.dense = dense;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super QuartNode<E>> action) {
+        while (this.index < this.fence) {
+            QuartNode<E> node = this.nodes[this.index++];
+            if (node != null) {
+                if (this.estimate > 0) {
+                    this.estimate--;
+                }
+                action.accept(node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super QuartNode<E>> action) {
+        QuartNode<E>[] table = this.nodes;
+        int end = this.fence;
+        for (int i = this.index; i < end; i++) {
+            if (table[i] != null) {
+                action.accept(table[i]);
+            }
+        }
+        this.index = end;
+        this.estimate = 0;
+    }
+
+    @Override
+    public Spliterator<QuartNode<E>> trySplit() {
+        int low = this.index;
+        int middle = (low + this.fence) >>> 1;
+        if (middle <= low) {
+            return null;
+        }
+        long prefix = this.dense ? middle - low : this.estimate >>> 1;
+        this.index = middle;
+        this.estimate -= prefix;
+        this.sized = this.dense;
+        return new QuartlyLinkedListSpliterator<>(this.nodes, low, middle, prefix, this.dense, this.dense);
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = DISTINCT | NONNULL;
+        if (this.sized) {
+            characteristics |= SIZED;
+        }
+        if (this.dense) {
+            characteristics |= SUBSIZED;
+        }
+        return characteristics;
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A graph of values placed on a grid, each linked to its neighbors to the north, east, south and west.
+ * QuartlyLinkedList keeps one QuartNode per value; CompactQuartlyLinkedList keeps the whole graph in flat arrays
+ * and hands out QuartNode views. A GameManager can be built on either.
+ *
+ * @param <E> The type of value stored in the list, must extend Cloneable.
+ */
+public interface QuartlyList<E extends Cloneable> extends Iterable<QuartNode<E>>, Cloneable {
+
+    /**
+     * Adds a new node with the specified value in the specified direction relative to the target value.
+     * The new node takes the grid cell next to the target and is linked to every occupied cell around it.
+     *
+     * @param toInsert  the value to insert
+     * @param target    the value to insert relative to, ignored while the list is empty
+     * @param direction the direction relative to the target value
+     * @throws NoSuchElement       if the target value does not exist in the list
+     * @throws DirectionIsOccupied if the direction is already occupied in the target node, or the cell is taken
+     */
+    void add(E toInsert, E target, Direction direction) throws NoSuchElement, DirectionIsOccupied;
+
+    /**
+     * Removes the node containing the specified value from the list.
+     *
+     * @param toRemove the value to remove
+     * @throws NoSuchElement if the specified value does not exist in the list
+     */
+    void remove(E toRemove) throws NoSuchElement;
+
+    /**
+     * Retrieves the node containing the specified value.
+     *
+     * @param value the value to search for
+     * @return the node containing the value, or null if not found
+     */
+    QuartNode<E> getNode(E value);
+
+    /**
+     * Retrieves the node occupying the specified grid cell.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the node occupying the cell, or null if the cell is empty
+     */
+    QuartNode<E> getNodeAt(int x, int y);
+
+    /**
+     * Checks if a node containing the specified value exists in the list.
+     *
+     * @param value the value to check for existence
+     * @return true if a node with the specified value exists, otherwise false
+     */
+    boolean isExist(E value);
+
+    /**
+     * Retrieves the root node of the list.
+     *
+     * @return the root node, or null if the list is empty
+     */
+    QuartNode<E> getRoot();
+
+    /**
+     * Returns the number of nodes in the list.
+     *
+     * @return the number of nodes
+     */
+    int size();
+
+    /**
+     * Returns a stream over every node of the list, including the nodes a removal cut off from the root.
+     * The list must not be modified while the stream is in use.
+     *
+     * @return a stream over the nodes
+     */
+    Stream<QuartNode<E>> stream();
+
+    /**
+     * Checks if the nodes holding the two values are joined by a path of links.
+     *
+     * @param first  the first value
+     * @param second the second value
+     * @return true if both values exist and are connected, otherwise false
+     */
+    boolean isConnected(E first, E second);
+
+    /**
+     * Checks if the node holding the value can be reached from the root, and so is visited by the iterator.
+     *
+     * @param value the value to check
+     * @return true if the value exists and is connected to the root, otherwise false
+     */
+    boolean isReachable(E value);
+
+    /**
+     * Finds a shortest sequence of moves from one value to another, where a walker may only step out of
+     * the nodes whose value passes the gate.
+     *
+     * @param from     the value to start from
+     * @param to       the value to reach
+     * @param canLeave tells whether a walker may leave the node holding a value
+     * @return the directions to follow, empty if both values share a node, or null if no route exists
+     * @throws NoSuchElement if either value does not exist in the list
+     */
+    List<Direction> findPath(E from, E to, Predicate<? super E> canLeave) throws NoSuchElement;
+
+    /**
+     * Maps every value reachable from the root and combines the results.
+     * The list must not be modified while the reduction runs.
+     *
+     * @param identity the identity of the combiner
+     * @param mapper   the function applied to each value
+     * @param combiner the associative function combining two results
+     * @param <R>      the type of the result
+     * @return the combined result, or identity if the list is empty
+     */
+    <R> R parallelReduce(R identity, Function<? super E, ? extends R> mapper, BinaryOperator<R> combiner);
+
+    /**
+     * Creates a deep copy of this list, cloning every value.
+     *
+     * @return a cloned instance of this list
+     */
+    QuartlyList<E> clone();
+
+    /**
+     * Creates a copy of this list with the same layout whose nodes hold the very same values as this list.
+     *
+     * @return a copy of this list sharing its values
+     */
+    QuartlyList<E> cloneSharingValues();
+
+    /**
+     * Replaces the value held by a node, keeping the node where it is.
+     *
+     * @param oldValue the value held by the node now
+     * @param newValue the value to hold instead
+     * @return true if a node held the old value, otherwise false
+     */
+    boolean replaceValue(E oldValue, E newValue);
+}
@@ -1,27 +1,59 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Room class represents a room in the game environment.
  */
-public class Room implements Cloneable {
-    private static final int MAX_ITEMS = 2; // Maximum number of items a room can contain
+public class Room implements DeepCopyable<Room> {
+    static final int MAX_ITEMS = 2; // Maximum number of items a room can contain
+    private static final AtomicLong NEXT_ID = new AtomicLong(1); // Shared by all rooms, so no two rooms share an id
     private String name; // Name of the room
-    private Item[] items; // Array to store items in the room
+    private AtomicReferenceArray<Item> items; // One slot per item the room can hold, null for an empty slot
     private  boolean riddle; // Flag indicating if the room has a puzzle or riddle
 
     private boolean keyStaus; // Flag indicating if the room has been opened
 
     private Key key;
 
+    private final long id; // Identity of the room, kept by its clones and by rooms restored from it
+
+    private volatile long generation; // Clock reading at the last change of the room, see Generation
+
+    private RoomListener listener; // Told about every change of the room, null if nobody listens
+
+    private List<WeakReference<RoomListener>> borrowers; // Lazy clones sharing this room, told before it changes
+
     /**
      * Constructs a Room object with a specified name.
      *
      * @param name The name of the room.
      */
     Room(String name) {
+        this(name, NEXT_ID.getAndIncrement());
+    }
+
+    /**
+     * Constructs a Room object that takes over the identity of a room saved or journaled earlier.
+     * Rooms constructed later get ids above it.
+     *
+     * @param name The name of the room.
+     * @param id   The id of the room it stands for.
+     */
+    Room(String name, long id) {
         this.name = name;
         this.riddle = false;
-        this.items = null;
+        this.items = new AtomicReferenceArray<>(MAX_ITEMS);
         this.key = null;
         this.keyStaus = false;
+        this.id = id;
+        this.generation = Generation.next();
+        if (id >= NEXT_ID.get()) {
+            NEXT_ID.accumulateAndGet(id + 1, Math::max);
+        }
     }
 
 
@@ -44,58 +76,50 @@ public class Room implements Cloneable {
 
     /**
      * Adds an item to the room's inventory.
+     * The item takes the first empty slot with a compare-and-set, so players dropping items into the same room
+     * at once never lose one and never overfill the room, without taking any lock or allocating.
      *
      * @param item The item to add.
      * Returns true if the item was added successfully, false if the room's inventory is full.
      */
     public boolean addItem(Item item) {
-        Item[] temp;
-        if (this.items == null) {
-            temp = new Item[1];
-        }  else if (this.items.length == MAX_ITEMS)
+        if (this.isRoomFull())
             return false;
-        else {
-            temp = new Item[items.length + 1];
-            for (int i = 0; i < items.length; i++)
-                temp[i] = items[i];
+        beforeChange();
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            if (this.items.get(i) == null && this.items.compareAndSet(i, null, item)) {
+                changed();
+                return true;
+            }
         }
-        temp[temp.length - 1] = item;
-        this.items = temp;
-        return true;
+        return false;
     }
 
     /**
-     * Removes an item from the room's inventory.
+     * Removes an item, and any item equal to it, from the room's inventory.
+     * Every slot is emptied with a compare-and-set, so when players pick up the same item at once only one of
+     * them is told it was removed.
      *
      * @param item The item to remove.
      * Returns true if the item was removed successfully, false if the item was not found.
      */
     public boolean removeItem(Item item) {
-        if (this.items == null)
-            return false;
-        int i, j = 0;
-        boolean isExist = false;
-        for (i = 0; i < this.items.length; i++) {
-            if (this.items[i].equals(item)) {
-                this.items[i] = null;
-                isExist = true;
+        boolean removed = false;
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            Item held = this.items.get(i);
+            if (held != null && held.equals(item)) {
+                if (!removed) {
+                    beforeChange();
+                }
+                if (this.items.compareAndSet(i, held, null)) {
+                    removed = true;
+                }
             }
         }
-        if (isExist == false)
-            return false;
-        if (this.items.length == 1) {
-            this.items = null;
-            return true;
-        }
-        Item[] temp = new Item[this.items.length - 1];
-        for (i = 0; i < this.items.length; i++) {
-            if (items[i] != null) {
-                temp[j] = items[i];
-                j++;
-            }
+        if (removed) {
+            changed();
         }
-        this.items = temp;
-        return true;
+        return removed;
     }
 
 
@@ -121,7 +145,9 @@ public class Room implements Cloneable {
      * @param bool true to set the room with a puzzle, false otherwise.
      */
     public void setRiddle(boolean bool) {
+        beforeChange();
         this.riddle = bool;
+        changed();
     }
 
     /**
@@ -143,9 +169,10 @@ public class Room implements Cloneable {
     public boolean isItemExist(Item item) {
         String newName = null;
         boolean isExist = false;
-        if (this.items == null)
-            return false;
-        for (Item item1 : this.items) {
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            Item item1 = this.items.get(i);
+            if (item1 == null)
+                continue;
             if (item1.equals(item) && item1.getName().equals(item.getName()))
                 return true;
             if (item1.equals(item)) {
@@ -165,33 +192,39 @@ public class Room implements Cloneable {
      * Returns true if the inventory is full, false otherwise.
      */
     public boolean isRoomFull() {
-        if (this.items == null)
-            return false;
-        return this.items.length == MAX_ITEMS;
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            if (this.items.get(i) == null)
+                return false;
+        }
+        return true;
     }
 
     /**
      * Empties the room from items.
      */
     public void emptyRoom() {
-        this.items = null;
+        beforeChange();
+        clearItems();
+        changed();
     }
 
 
 
     /**
-     * Calculates the hash code for the Room object based on its attributes.
+     * Calculates the hash code for the Room object based on its id.
+     * The id never changes, so the hash code stays the same while items come and go.
      *
      * Returns The calculated hash code.
      */
     @Override
     public int hashCode() {
-        return convertNameIntoNumber(this.getName()) * 10000 + 100 * this.sumOfItems() +
-                10 * convertBooleanIntoInt(this.keyStaus) + convertBooleanIntoInt(this.riddle);
+        return Long.hashCode(this.id);
     }
 
     /**
      * Checks if this Room object is equal to another object.
+     * Two rooms are equal if they share the same id, that is if one is a clone or a restored copy of the other.
+     * Rooms that only share a name are different rooms.
      *
      * @param object The object to compare with.
      * Returns True if the objects are equal, false otherwise.
@@ -202,13 +235,115 @@ public class Room implements Cloneable {
             return false;
         }
         if (object instanceof Room) {
-            if (this.hashCode() == object.hashCode()) {
-                return true;
+            return this.id == ((Room) object).id;
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the identity of the room.
+     *
+     * Returns The id of the room, never 0.
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Retrieves the key the room was unlocked with.
+     *
+     * Returns The key, or null if the room was not unlocked.
+     */
+    Key getKey() {
+        return this.key;
+    }
+
+    /**
+     * Sets the listener told about every change of the room.
+     *
+     * @param listener The listener, or null for none.
+     */
+    void setListener(RoomListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Retrieves the generation of the room, which moves forward on every change.
+     *
+     * Returns The generation.
+     */
+    long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Moves the generation forward and tells the listener that the room changed.
+     */
+    private void changed() {
+        this.generation = Generation.next();
+        if (this.listener != null) {
+            this.listener.roomChanged(this);
+        }
+    }
+
+    /**
+     * Lends the room to a lazy clone of the game it belongs to. Right before the room changes for the first time,
+     * the borrower is handed the room in its unchanged state so it can take a copy, and is then forgotten.
+     * The borrower is held weakly, so a clone that is thrown away does not stay alive through its rooms.
+     *
+     * @param borrower The lazy clone's callback.
+     */
+    void lend(RoomListener borrower) {
+        if (this.borrowers == null) {
+            this.borrowers = new ArrayList<>(1);
+        }
+        this.borrowers.add(new WeakReference<>(borrower));
+    }
+
+    /**
+     * Checks if the room is still lent to a borrower.
+     *
+     * @param borrower The lazy clone's callback.
+     * Returns true if the borrower shares this room and has not taken its copy yet, false otherwise.
+     */
+    boolean isLentTo(RoomListener borrower) {
+        if (this.borrowers != null) {
+            for (WeakReference<RoomListener> reference : this.borrowers) {
+                if (reference.get() == borrower) {
+                    return true;
+                }
             }
         }
         return false;
     }
 
+    /**
+     * Takes the room back from a borrower that made its own copy.
+     *
+     * @param borrower The lazy clone's callback.
+     */
+    void giveBack(RoomListener borrower) {
+        if (this.borrowers != null) {
+            this.borrowers.removeIf(reference -> reference.get() == null || reference.get() == borrower);
+        }
+    }
+
+    /**
+     * Lets every borrower copy the room before it changes.
+     */
+    private void beforeChange() {
+        if (this.borrowers != null) {
+            List<WeakReference<RoomListener>> lent = this.borrowers;
+            this.borrowers = null;
+            for (WeakReference<RoomListener> reference : lent) {
+                RoomListener borrower = reference.get();
+                if (borrower != null) {
+                    borrower.roomChanged(this);
+                }
+            }
+        }
+    }
+
     /**
      * Calculates the sum of values of items present in the room.
      *
@@ -216,8 +351,9 @@ public class Room implements Cloneable {
      */
     public int sumOfItems() {
         int sum = 0;
-        if (this.items != null) {
-            for (Item item : this.items) {
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            Item item = this.items.get(i);
+            if (item != null) {
                 sum += item.value;
             }
         }
@@ -241,9 +377,11 @@ public class Room implements Cloneable {
      */
     public boolean unlockRoom(Key key) {
         if (this.keyStaus == false) {
+            beforeChange();
             this.riddle = false;
             this.keyStaus = true;
             this.key = key;
+            changed();
             return true;
         }
         return false;
@@ -263,37 +401,6 @@ public class Room implements Cloneable {
         return false;
     }
 
-    /**
-     * Converts the name of the room into a numerical representation.
-     *
-     * @param name The name of the room.
-     * Returns The numerical representation of the name.
-     */
-    public static int convertNameIntoNumber(String name) {
-        int factor = 1;
-        int number = 0;
-        for (int i = 0; i < name.length(); i++) {
-            char charValue = name.charAt(i);
-            int numericValue = (int) charValue;
-            number += numericValue * factor;
-            factor *= 10;
-        }
-        return number;
-    }
-
-    /**
-     * Converts a boolean value into an integer (0 for false, 1 for true).
-     *
-     * @param x The boolean value to be converted.
-     * Returns The integer representation of the boolean value.
-     */
-    public static int convertBooleanIntoInt(boolean x) {
-        if (x) {
-            return 1;
-        }
-        return 0;
-    }
-
     /**
      * Retrieves the name of the key required to unlock the room.
      *
@@ -340,22 +447,36 @@ public class Room implements Cloneable {
         try {
             Room clonedRoom = (Room) super.clone();
 
-            if (this.items != null) {
-                clonedRoom.items = new Item[this.items.length];
-                for (int i = 0; i < this.items.length; i++) {
-                    clonedRoom.items[i] = this.items[i].clone();
+            clonedRoom.items = new AtomicReferenceArray<>(MAX_ITEMS);
+            for (int i = 0; i < MAX_ITEMS; i++) {
+                Item item = this.items.get(i);
+                if (item != null) {
+                    clonedRoom.items.set(i, item.clone());
                 }
             }
 
             if (this.key != null) {
                 clonedRoom.key = this.key.clone();
             }
+            clonedRoom.listener = null;
+            clonedRoom.borrowers = null;
             return clonedRoom;
         } catch (CloneNotSupportedException e) {
             return null;
         }
 
     }
+
+    /**
+     * Creates a deep copy of the room, the same one clone makes.
+     *
+     * @return A deep copy of the Room object.
+     */
+    @Override
+    public Room deepCopy() {
+        return clone();
+    }
+
     @Override
    public String toString() {
         return "Room: "+this.name+".";
@@ -365,13 +486,40 @@ public class Room implements Cloneable {
      * Resets the room properties to the default value.
      */
     public void reset() {
+        beforeChange();
         this.riddle = false;
-        this.items = null;
+        clearItems();
         this.key = null;
         this.keyStaus = false;
+        changed();
+    }
+
+    /**
+     * Empties every slot of the inventory.
+     */
+    private void clearItems() {
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            this.items.set(i, null);
+        }
     }
 
+    /**
+     * Retrieves the items lying in the room, in the order of their slots.
+     *
+     * Returns A copy of the items, or null if the room is empty.
+     */
     public Item[] getItems(){
-        return this.items;
+        int count = 0;
+        Item[] held = new Item[MAX_ITEMS];
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            Item item = this.items.get(i);
+            if (item != null) {
+                held[count++] = item;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return count == MAX_ITEMS ? held : Arrays.copyOf(held, count);
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+/**
+ * Listener told whenever the state of a room changes.
+ */
+interface RoomListener {
+
+    /**
+     * Called when the items, puzzle or key status of the room change: after the change for a listener,
+     * right before it for a borrower the room is lent to.
+     *
+     * @param room The room that changed.
+     */
+    void roomChanged(Room room);
+}
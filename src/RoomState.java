@@ -0,0 +1,125 @@
+/**
+ * An immutable copy of a room and of its place in the map, as stored in a WorldSnapshot.
+ */
+public final class RoomState {
+    private final long id;
+    private final long generation;
+    private final String name;
+    private final boolean riddle;
+    private final boolean keyStatus;
+    private final Key key;
+    private final Item[] items;
+    private final int x;
+    private final int y;
+    private final long[] neighbors; // id of the neighbor by direction ordinal, 0 for none
+
+    private RoomState(Room room, QuartNode<Room> node) {
+        this.id = room.getId();
+        this.generation = room.getGeneration();
+        this.name = room.getName();
+        this.riddle = room.getRiddle();
+        this.keyStatus = room.getKeyStatus();
+        this.key = room.getKey() != null ? room.getKey().clone() : null;
+        Item[] roomItems = room.getItems();
+        if (roomItems != null) {
+            this.items = new Item[roomItems.length];
+            for (int i = 0; i < roomItems.length; i++) {
+                this.items[i] = roomItems[i] != null ? roomItems[i].clone() : null;
+            }
+        } else {
+            this.items = null;
+        }
+        this.x = node.getX();
+        this.y = node.getY();
+        this.neighbors = new long[4];
+        for (Direction direction : Direction.values()) {
+            QuartNode<Room> neighbor = node.getNeighbor(direction);
+            if (neighbor != null && neighbor.getValue() != null) {
+                this.neighbors[direction.ordinal()] = neighbor.getValue().getId();
+            }
+        }
+    }
+
+    /**
+     * Copies the current state of a room.
+     *
+     * @param room The room to copy.
+     * @param node The node holding the room.
+     * @return The copy.
+     */
+    static RoomState of(Room room, QuartNode<Room> node) {
+        return new RoomState(room, node);
+    }
+
+    /**
+     * Builds a new room holding a copy of this state, without its place in the map.
+     *
+     * @return The new room.
+     */
+    Room toRoom() {
+        Room room = new Room(this.name, this.id);
+        if (this.items != null) {
+            for (Item item : this.items) {
+                room.addItem(item != null ? item.clone() : null);
+            }
+        }
+        if (this.keyStatus) {
+            room.unlockRoom(this.key != null ? this.key.clone() : null);
+        }
+        room.setRiddle(this.riddle);
+        return room;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Retrieves the generation the room had when this state was copied. Two states of a room with the same
+     * generation and the same cell are the same.
+     *
+     * @return The generation.
+     */
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean getRiddle() {
+        return this.riddle;
+    }
+
+    public boolean getKeyStatus() {
+        return this.keyStatus;
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    /**
+     * Retrieves the id of the neighbor in the given direction.
+     *
+     * @param direction The direction of the neighbor.
+     * @return The id of the neighbor, or 0 if there is none.
+     */
+    public long getNeighborId(Direction direction) {
+        return this.neighbors[direction.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of items lying in the room.
+     *
+     * @return The number of items.
+     */
+    public int getItemCount() {
+        return this.items == null ? 0 : this.items.length;
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A stand-in for System.out that hands what the game prints to the session running on the current thread.
+ * The game reports everything through System.out, so a server installs one of these and captures the messages of
+ * each command into the buffer of the session that ran it. Threads that are not capturing print to the console
+ * this one replaced.
+ *
+ * Every print and println method is overridden, so nothing a capturing thread prints reaches the console. Text goes
+ * into the buffer as it is; raw bytes are decoded as UTF-8, holding back the bytes of a character that is not
+ * complete yet until the rest of it is written or the capture ends.
+ *
+ * Unlike a plain PrintStream, the methods the game calls take no lock, so sessions never wait for each other here.
+ */
+class SessionConsole extends PrintStream {
+    private static int users; // installs not released yet, guarded by the class
+
+    private final PrintStream console; // where threads that are not capturing print
+    private final ThreadLocal<Capture> capture;
+
+    /**
+     * Constructs a console falling back to the given stream.
+     *
+     * @param console The stream threads that are not capturing print to.
+     */
+    SessionConsole(PrintStream console) {
+        super(console, true);
+        this.console = console;
+        this.capture = ThreadLocal.withInitial(Capture::new);
+    }
+
+    /**
+     * Returns the SessionConsole standing in for System.out, installing one in front of the current System.out
+     * if there is none yet, so that every user of it shares the same one. Every call must be paired with a call
+     * to release once the caller is done with it.
+     */
+    static synchronized SessionConsole install() {
+        users++;
+        if (System.out instanceof SessionConsole) {
+            return (SessionConsole) System.out;
+        }
+        SessionConsole console = new SessionConsole(System.out);
+        System.setOut(console);
+        return console;
+    }
+
+    /**
+     * Gives back a console returned by install. When the last user gave it back, System.out is set to the stream
+     * the console replaced, unless it was replaced by something else since.
+     *
+     * @param console The console returned by install.
+     */
+    static synchronized void release(SessionConsole console) {
+        if (users > 0 && --users == 0 && System.out == console) {
+            System.setOut(console.getConsole());
+        }
+    }
+
+    /**
+     * Sends what the current thread prints from now on into a buffer. The capture going on so far ends, and the
+     * bytes it still held back are decoded into its buffer first.
+     *
+     * @param buffer The buffer, or null to print to the console again.
+     */
+    void capture(StringBuilder buffer) {
+        Capture current = this.capture.get();
+        current.finish();
+        current.buffer = buffer;
+    }
+
+    /**
+     * Returns the buffer the current thread captures into, or null if it prints to the console.
+     */
+    StringBuilder getCapture() {
+        return this.capture.get().buffer;
+    }
+
+    /**
+     * Returns the console threads that are not capturing print to.
+     */
+    PrintStream getConsole() {
+        return this.console;
+    }
+
+    @Override
+    public void print(String text) {
+        Capture current = this.capture.get();
+        if (current.buffer == null) {
+            this.console.print(text);
+        } else {
+            current.append(text);
+        }
+    }
+
+    @Override
+    public void print(Object object) {
+        print(String.valueOf(object));
+    }
+
+    @Override
+    public void print(boolean b) {
+        print(String.valueOf(b));
+    }
+
+    @Override
+    public void print(char c) {
+        print(String.valueOf(c));
+    }
+
+    @Override
+    public void print(int i) {
+        print(String.valueOf(i));
+    }
+
+    @Override
+    public void print(long l) {
+        print(String.valueOf(l));
+    }
+
+    @Override
+    public void print(float f) {
+        print(String.valueOf(f));
+    }
+
+    @Override
+    public void print(double d) {
+        print(String.valueOf(d));
+    }
+
+    @Override
+    public void print(char[] chars) {
+        print(new String(chars));
+    }
+
+    @Override
+    public void println(String text) {
+        Capture current = this.capture.get();
+        if (current.buffer == null) {
+            this.console.println(text);
+        } else {
+            current.append(text);
+            current.buffer.append('\n');
+        }
+    }
+
+    @Override
+    public void println(Object object) {
+        println(String.valueOf(object));
+    }
+
+    @Override
+    public void println(boolean b) {
+        println(String.valueOf(b));
+    }
+
+    @Override
+    public void println(char c) {
+        println(String.valueOf(c));
+    }
+
+    @Override
+    public void println(int i) {
+        println(String.valueOf(i));
+    }
+
+    @Override
+    public void println(long l) {
+        println(String.valueOf(l));
+    }
+
+    @Override
+    public void println(float f) {
+        println(String.valueOf(f));
+    }
+
+    @Override
+    public void println(double d) {
+        println(String.valueOf(d));
+    }
+
+    @Override
+    public void println(char[] chars) {
+        println(new String(chars));
+    }
+
+    @Override
+    public void println() {
+        println("");
+    }
+
+    @Override
+    public PrintStream printf(String format, Object... args) {
+        return format(format, args);
+    }
+
+    @Override
+    public PrintStream printf(Locale locale, String format, Object... args) {
+        return format(locale, format, args);
+    }
+
+    @Override
+    public PrintStream format(String format, Object... args) {
+        print(String.format(format, args));
+        return this;
+    }
+
+    @Override
+    public PrintStream format(Locale locale, String format, Object... args) {
+        print(String.format(locale, format, args));
+        return this;
+    }
+
+    @Override
+    public void write(int b) {
+        Capture current = this.capture.get();
+        if (current.buffer == null) {
+            this.console.write(b);
+        } else {
+            current.write(new byte[]{(byte) b}, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        Capture current = this.capture.get();
+        if (current.buffer == null) {
+            this.console.write(bytes, offset, length);
+        } else {
+            current.write(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (this.capture.get().buffer == null) {
+            this.console.flush();
+        }
+    }
+
+    /**
+     * What one thread captures into, kept for the life of the thread. The decoder and its buffers are only made
+     * once the thread writes raw bytes.
+     */
+    private static final class Capture {
+        private StringBuilder buffer; // null while the thread prints to the console
+        private CharsetDecoder decoder;
+        private ByteBuffer bytes; // bytes not decoded yet, ready to be written to
+        private CharBuffer chars;
+
+        /**
+         * Appends text, after whatever raw bytes were written before it.
+         */
+        void append(String text) {
+            if (this.bytes != null && this.bytes.position() > 0) {
+                // A character cut short by text printed after it cannot be completed any more
+                decode(true);
+            }
+            this.buffer.append(text);
+        }
+
+        /**
+         * Decodes raw bytes into the buffer, holding back the bytes of a character that is not complete yet.
+         */
+        void write(byte[] source, int offset, int length) {
+            if (this.decoder == null) {
+                this.decoder = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                this.bytes = ByteBuffer.allocate(256);
+                this.chars = CharBuffer.allocate(256);
+            }
+            while (length > 0) {
+                // At most the start of one character is held back, so every round makes room
+                int count = Math.min(length, this.bytes.remaining());
+                this.bytes.put(source, offset, count);
+                offset += count;
+                length -= count;
+                decode(false);
+            }
+        }
+
+        /**
+         * Decodes the bytes held back as they are, for the end of the capture.
+         */
+        void finish() {
+            if (this.buffer != null && this.bytes != null && this.bytes.position() > 0) {
+                decode(true);
+            }
+        }
+
+        private void decode(boolean endOfInput) {
+            this.bytes.flip();
+            CoderResult result;
+            do {
+                result = this.decoder.decode(this.bytes, this.chars, endOfInput);
+                drain();
+            } while (result.isOverflow());
+            if (endOfInput) {
+                while (this.decoder.flush(this.chars).isOverflow()) {
+                    drain();
+                }
+                drain();
+                this.decoder.reset();
+            }
+            this.bytes.compact();
+        }
+
+        private void drain() {
+            this.chars.flip();
+            this.buffer.append(this.chars);
+            this.chars.clear();
+        }
+    }
+}
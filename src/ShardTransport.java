@@ -0,0 +1,22 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries handoffs from one shard of a ShardedWorld to another. The handoffs bound for a shard must arrive in the
+ * order they were sent.
+ */
+interface ShardTransport extends Closeable {
+
+    /**
+     * Sends a handoff to a shard, which receives it on its own worker some time later.
+     *
+     * @param shard   The index of the shard.
+     * @param handoff The handoff.
+     * @throws IOException if the handoff could not be sent, in which case the shard never receives it.
+     */
+    void send(int shard, Handoff handoff) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * A world too large for one list and one thread, cut into rectangular shards of the grid, each a WorldShard
+ * with a QuartlyLinkedList fragment and a worker thread of its own.
+ *
+ * Shards are shardWidth by shardHeight cells, counted from the south west corner of the world. Two rooms next to
+ * each other in one shard stay linked; an exit from one shard into another becomes a reference by cell, and a
+ * player walking through it is handed from the worker of its shard to the worker of the other as a Handoff, sent
+ * over a ShardTransport. The transport is either a plain call into the other shard, or a local TCP or Unix domain
+ * socket per shard, so that the shards can later live in processes of their own.
+ *
+ * Players are addressed by name. The world keeps a directory of the shard every player stands in, which sends a
+ * command to the worker owning the player; the command runs there, and its caller gets what the game printed for
+ * it. Rooms cannot be added or removed once the world is sharded.
+ *
+ * The world counts the work still under way: calls that have not returned yet, and handoffs that were sent but
+ * whose player has not been placed yet. Closing turns new calls away first, waits until that count is zero, and
+ * only then stops the workers and the transport, so no player is left in the inbox of a stopped shard.
+ */
+public class ShardedWorld implements Closeable {
+
+    /**
+     * How the shards hand players to each other.
+     */
+    enum Transport {
+        IN_PROCESS, TCP, UNIX
+    }
+
+    private final int shardWidth;
+    private final int shardHeight;
+    private final int minX; // west edge of the world
+    private final int minY; // south edge of the world
+    private final int columns; // shards from west to east
+    private final HashMap<Room, Long> cells; // packed cell of every room, never changed after construction
+    private final WorldShard[] shards;
+    private final ConcurrentHashMap<String, Integer> owners; // shard every player stands in, by name
+    private final ShardTransport transport;
+    private final AtomicInteger busy; // calls under way and handoffs in flight
+    private final Object idle; // notified when busy drops to zero
+    private volatile boolean closed;
+
+    /**
+     * Shards a world, with the shards handing players to each other within this process.
+     *
+     * @param rooms       The rooms of the world, for instance built by a WorldBuilder.
+     * @param shardWidth  The number of cells of a shard from west to east.
+     * @param shardHeight The number of cells of a shard from south to north.
+     */
+    public ShardedWorld(QuartlyLinkedList<Room> rooms, int shardWidth, int shardHeight) {
+        this(rooms, shardWidth, shardHeight, Transport.IN_PROCESS);
+    }
+
+    /**
+     * Shards a world. The rooms are moved into the fragments of the shards, so the list handed in must not be used
+     * any more afterwards.
+     *
+     * @param rooms       The rooms of the world, for instance built by a WorldBuilder.
+     * @param shardWidth  The number of cells of a shard from west to east.
+     * @param shardHeight The number of cells of a shard from south to north.
+     * @param transport   How the shards hand players to each other.
+     * @throws UncheckedIOException if the sockets of the transport cannot be opened.
+     */
+    ShardedWorld(QuartlyLinkedList<Room> rooms, int shardWidth, int shardHeight, Transport transport) {
+        if (shardWidth <= 0 || shardHeight <= 0) {
+            throw new IllegalArgumentException("A shard must be at least one cell wide and high.");
+        }
+        List<QuartNode<Room>> nodes = rooms.stream().collect(Collectors.toList());
+        int minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if (!nodes.isEmpty()) {
+            minX = minY = Integer.MAX_VALUE;
+            maxX = maxY = Integer.MIN_VALUE;
+            for (QuartNode<Room> node : nodes) {
+                minX = Math.min(minX, node.getX());
+                minY = Math.min(minY, node.getY());
+                maxX = Math.max(maxX, node.getX());
+                maxY = Math.max(maxY, node.getY());
+            }
+        }
+        this.shardWidth = shardWidth;
+        this.shardHeight = shardHeight;
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = (maxX - minX) / shardWidth + 1;
+        int count = this.columns * ((maxY - minY) / shardHeight + 1);
+
+        List<QuartlyLinkedList<Room>> fragments = new ArrayList<>(count);
+        List<HashMap<Long, String>> boundaries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fragments.add(new QuartlyLinkedList<>());
+            boundaries.add(new HashMap<>());
+        }
+        this.cells = new HashMap<>();
+        for (QuartNode<Room> node : nodes) {
+            int shard = shardOf(node.getX(), node.getY());
+            try {
+                fragments.get(shard).addAt(node.getValue(), node.getX(), node.getY());
+            } catch (DirectionIsOccupied e) {
+                throw new InvalidWorldLayout("Two rooms share the cell (" + node.getX() + ", " + node.getY() + ").");
+            }
+            this.cells.put(node.getValue(), CoordinateMap.pack(node.getX(), node.getY()));
+            for (Direction direction : Direction.values()) {
+                QuartNode<Room> neighbor = node.getNeighbor(direction);
+                if (neighbor != null && shardOf(neighbor.getX(), neighbor.getY()) != shard) {
+                    boundaries.get(shard).put(CoordinateMap.pack(neighbor.getX(), neighbor.getY()), neighbor.getValue().getName());
+                }
+            }
+        }
+
+        this.owners = new ConcurrentHashMap<>();
+        this.busy = new AtomicInteger();
+        this.idle = new Object();
+        this.shards = new WorldShard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new WorldShard(this, i, fragments.get(i), boundaries.get(i));
+        }
+        if (transport == Transport.IN_PROCESS) {
+            this.transport = (shard, handoff) -> this.shards[shard].receive(handoff);
+        } else {
+            try {
+                this.transport = new SocketShardTransport(this.shards, transport == Transport.UNIX);
+            } catch (IOException e) {
+                for (WorldShard shard : this.shards) {
+                    shard.close();
+                }
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.closed = false;
+    }
+
+    /**
+     * Adds a player to the game, standing in the given room.
+     *
+     * @param player The player, only reached through the world from now on. Players are told apart by name.
+     * @param start  The room the player starts in.
+     * Returns What the game printed.
+     * throws RoomDoesNotExist if the room is not in the world.
+     */
+    public String addPlayer(Player player, Room start) {
+        enter();
+        try {
+            Long cell = this.cells.get(start);
+            if (cell == null) {
+                throw new RoomDoesNotExist();
+            }
+            int x = (int) (cell >> 32);
+            int y = (int) (long) cell;
+            int shard = shardOf(x, y);
+            if (this.owners.putIfAbsent(player.getName(), shard) != null) {
+                return "Could not add " + player.getName() + " to the game.\n";
+            }
+            CompletableFuture<String> done = new CompletableFuture<>();
+            this.shards[shard].admit(player, x, y, done);
+            return await(done);
+        } finally {
+            leave();
+        }
+    }
+
+    public String removePlayer(String name) {
+        return call(name, WorldShard::remove);
+    }
+
+    public String movePlayer(String name, Direction direction) {
+        return call(name, (shard, player) -> shard.move(player, direction));
+    }
+
+    public String pickUpItem(String name, String item) {
+        return call(name, (shard, player) -> shard.pickUpItem(player, item));
+    }
+
+    public String dropItem(String name, String item) {
+        return call(name, (shard, player) -> shard.dropItem(player, item));
+    }
+
+    public String useItem(String name, String item) {
+        return call(name, (shard, player) -> shard.useItem(player, item));
+    }
+
+    public String solvePuzzle(String name) {
+        return call(name, (shard, player) -> player.solvePuzzle());
+    }
+
+    public String look(String name) {
+        return call(name, WorldShard::look);
+    }
+
+    /**
+     * Returns the number of shards, including shards of the bounding rectangle holding no room.
+     */
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    /**
+     * Retrieves the shard a player stands in, or is on the way to.
+     *
+     * @param name The name of the player.
+     * Returns The index of the shard, or -1 if no player of the game has that name.
+     */
+    public int getShardOf(String name) {
+        Integer owner = this.owners.get(name);
+        return owner != null ? owner : -1;
+    }
+
+    /**
+     * Returns the index of the shard owning a cell of the rectangle the world spans.
+     */
+    int shardOf(int x, int y) {
+        int column = Math.floorDiv(x - this.minX, this.shardWidth);
+        int row = Math.floorDiv(y - this.minY, this.shardHeight);
+        return row * this.columns + column;
+    }
+
+    WorldShard getShard(int index) {
+        return this.shards[index];
+    }
+
+    ShardTransport getTransport() {
+        return this.transport;
+    }
+
+    Integer ownerOf(String name) {
+        return this.owners.get(name);
+    }
+
+    void setOwner(String name, int shard) {
+        this.owners.put(name, shard);
+    }
+
+    void removeOwner(String name) {
+        this.owners.remove(name);
+    }
+
+    /**
+     * Sends a command to the shard of its player and waits for it to run there.
+     *
+     * Returns What the game printed for the command.
+     * throws the RuntimeException the game threw for the command, in the calling thread.
+     */
+    private String call(String name, WorldShard.Command command) {
+        enter();
+        try {
+            Integer owner = this.owners.get(name);
+            if (owner == null) {
+                return name + " does not exist.\n";
+            }
+            CompletableFuture<String> done = new CompletableFuture<>();
+            this.shards[owner].submit(name, command, done);
+            return await(done);
+        } finally {
+            leave();
+        }
+    }
+
+    private static String await(CompletableFuture<String> done) {
+        try {
+            return done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a call or a handoff as under way, turning calls away once the world is closing.
+     * Counted before the check, so close either sees the call or the call sees close.
+     *
+     * throws IllegalStateException if the world is closed.
+     */
+    private void enter() {
+        this.busy.incrementAndGet();
+        if (this.closed) {
+            leave();
+            throw new IllegalStateException("The world is closed.");
+        }
+    }
+
+    private void leave() {
+        if (this.busy.decrementAndGet() == 0) {
+            synchronized (this.idle) {
+                this.idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Counts a handoff as in flight, from before it is sent until its player is placed. It is only ever started
+     * by a call that is itself still under way, so the count cannot touch zero in between.
+     */
+    void handoffSent() {
+        this.busy.incrementAndGet();
+    }
+
+    /**
+     * Counts a handoff as over, once its player was placed or the handoff could not be sent.
+     */
+    void handoffDone() {
+        leave();
+    }
+
+    /**
+     * Turns new calls away, waits until the calls under way returned and no handoff is in flight, then stops the
+     * workers and closes the transport.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        synchronized (this.idle) {
+            while (this.busy.get() > 0) {
+                try {
+                    this.idle.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the shards to settle.", e);
+                }
+            }
+        }
+        for (WorldShard shard : this.shards) {
+            shard.close();
+        }
+        this.transport.close();
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A ShardTransport sending handoffs over local sockets, so that shards could as well run in other processes.
+ *
+ * Every shard listens on a socket of its own, on the loopback interface or as a Unix domain socket in a
+ * temporary directory. Senders share one connection per receiving shard, opened the first time a handoff goes
+ * there and written under the monitor of that shard's lock, which keeps the handoffs bound for a shard in the
+ * order they were sent. Every handoff travels as one frame, an int length followed by the handoff as written by
+ * Handoff.write, and a thread per incoming connection hands the frames it reads to the shard.
+ */
+final class SocketShardTransport implements ShardTransport {
+    private final WorldShard[] shards;
+    private final ServerSocketChannel[] servers; // one per shard
+    private final SocketChannel[] outgoing; // one per shard, null until the first handoff to it
+    private final Object[] locks; // guards the outgoing connection of the same index
+    private final Set<SocketChannel> incoming;
+    private final Path directory; // holding the Unix domain sockets, null for TCP
+    private volatile boolean closed;
+
+    /**
+     * Opens a listening socket for every shard and starts accepting connections.
+     *
+     * @param shards The shards, by index.
+     * @param unix   true for Unix domain sockets, false for TCP on the loopback interface.
+     * @throws IOException if a socket cannot be opened.
+     */
+    SocketShardTransport(WorldShard[] shards, boolean unix) throws IOException {
+        this.shards = shards;
+        this.servers = new ServerSocketChannel[shards.length];
+        this.outgoing = new SocketChannel[shards.length];
+        this.locks = new Object[shards.length];
+        this.incoming = ConcurrentHashMap.newKeySet();
+        this.directory = unix ? Files.createTempDirectory("quartly-shards") : null;
+        this.closed = false;
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                this.locks[i] = new Object();
+                if (unix) {
+                    this.servers[i] = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                    this.servers[i].bind(UnixDomainSocketAddress.of(this.directory.resolve("shard-" + i + ".sock")));
+                } else {
+                    this.servers[i] = ServerSocketChannel.open();
+                    this.servers[i].bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            Thread acceptor = new Thread(() -> accept(shard), "shard-transport-acceptor-" + i);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+    }
+
+    @Override
+    public void send(int shard, Handoff handoff) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        handoff.write(new DataOutputStream(bytes));
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + bytes.size());
+        frame.putInt(bytes.size()).put(bytes.toByteArray()).flip();
+        synchronized (this.locks[shard]) {
+            if (this.closed) {
+                throw new ClosedChannelException();
+            }
+            if (this.outgoing[shard] == null) {
+                this.outgoing[shard] = SocketChannel.open(this.servers[shard].getLocalAddress());
+            }
+            try {
+                while (frame.hasRemaining()) {
+                    this.outgoing[shard].write(frame);
+                }
+            } catch (IOException e) {
+                // A frame cut short would garble the stream, so the next handoff starts on a new connection
+                this.outgoing[shard].close();
+                this.outgoing[shard] = null;
+                throw e;
+            }
+        }
+    }
+
+    private void accept(int shard) {
+        while (!this.closed) {
+            try {
+                SocketChannel connection = this.servers[shard].accept();
+                this.incoming.add(connection);
+                Thread reader = new Thread(() -> read(shard, connection), "shard-transport-reader-" + shard);
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                // Closed, or the connection went away before it was accepted
+                if (this.closed || !this.servers[shard].isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the frames of an incoming connection to the shard until the connection closes.
+     */
+    private void read(int shard, SocketChannel connection) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Frame of " + length + " bytes.");
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                try {
+                    this.shards[shard].receive(Handoff.read(ByteBuffer.wrap(frame)));
+                } catch (RuntimeException e) {
+                    // The shard still counts the handoff as over, so closing the world does not wait for it
+                    this.shards[shard].lose(ByteBuffer.wrap(frame), e);
+                }
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            // The sender closed the connection
+        } catch (IOException e) {
+            if (!this.closed) {
+                System.err.println("Lost the connection to shard " + shard + ": " + e.getMessage());
+            }
+        } finally {
+            this.incoming.remove(connection);
+        }
+    }
+
+    /**
+     * Closes every connection and listening socket, and removes the Unix domain sockets.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        for (int i = 0; i < this.servers.length; i++) {
+            if (this.servers[i] != null) {
+                this.servers[i].close();
+            }
+            if (this.locks[i] != null) {
+                synchronized (this.locks[i]) {
+                    if (this.outgoing[i] != null) {
+                        this.outgoing[i].close();
+                        this.outgoing[i] = null;
+                    }
+                }
+            }
+        }
+        for (SocketChannel connection : this.incoming) {
+            connection.close();
+        }
+        if (this.directory != null) {
+            for (int i = 0; i < this.servers.length; i++) {
+                Files.deleteIfExists(this.directory.resolve("shard-" + i + ".sock"));
+            }
+            Files.deleteIfExists(this.directory);
+        }
+    }
+}
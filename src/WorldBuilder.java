@@ -0,0 +1,272 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * WorldBuilder collects a whole world layout, the rooms with their links, starting items, keys and riddles,
+ * and builds it in one go. The layout is checked in a single pass that reports every conflict at once, then the
+ * rooms are placed in breadth first order next to nodes already in hand, so building takes time linear in the
+ * number of rooms and prints nothing.
+ * Links may be declared in any order: a room may name a target that is only declared later.
+ */
+public class WorldBuilder {
+    private final List<Placement> placements; // Rooms in the order they were declared
+    private final List<Room> itemRooms; // Room of every starting item, parallel to items
+    private final List<Item> items;
+    private final List<Room> riddleRooms;
+    private final List<Room> lockedRooms; // Rooms that start unlocked, parallel to keys
+    private final List<Key> keys;
+
+    /**
+     * Constructs an empty WorldBuilder.
+     */
+    public WorldBuilder() {
+        this.placements = new ArrayList<>();
+        this.itemRooms = new ArrayList<>();
+        this.items = new ArrayList<>();
+        this.riddleRooms = new ArrayList<>();
+        this.lockedRooms = new ArrayList<>();
+        this.keys = new ArrayList<>();
+    }
+
+    /**
+     * Declares a room of the layout, like GameManager.addRoom does.
+     *
+     * @param toInsert  The room to declare.
+     * @param target    The room toInsert is connected to, or null for the first room.
+     * @param direction The direction of target in which toInsert is placed.
+     * Returns This builder.
+     */
+    public WorldBuilder addRoom(Room toInsert, Room target, Direction direction) {
+        this.placements.add(new Placement(toInsert, target, direction));
+        return this;
+    }
+
+    /**
+     * Declares an item lying in a room when the game starts.
+     *
+     * @param room The room holding the item.
+     * @param item The item.
+     * Returns This builder.
+     */
+    public WorldBuilder addItem(Room room, Item item) {
+        this.itemRooms.add(room);
+        this.items.add(item);
+        return this;
+    }
+
+    /**
+     * Declares a room whose puzzle is active when the game starts.
+     *
+     * @param room The room.
+     * Returns This builder.
+     */
+    public WorldBuilder activatePuzzle(Room room) {
+        this.riddleRooms.add(room);
+        return this;
+    }
+
+    /**
+     * Declares a room that starts unlocked with a key.
+     *
+     * @param room The room.
+     * @param key  The key the room was unlocked with.
+     * Returns This builder.
+     */
+    public WorldBuilder unlockRoom(Room room, Key key) {
+        this.lockedRooms.add(room);
+        this.keys.add(key);
+        return this;
+    }
+
+    /**
+     * Builds a new game holding the layout, with no player.
+     *
+     * Returns The new game.
+     * throws InvalidWorldLayout listing every conflict if the layout cannot be built.
+     */
+    public GameManager build() {
+        return new GameManager(buildRooms());
+    }
+
+    /**
+     * Builds the rooms of the layout into a new list.
+     *
+     * Returns The list of rooms, rooted at the first room.
+     * throws InvalidWorldLayout listing every conflict if the layout cannot be built.
+     */
+    public QuartlyLinkedList<Room> buildRooms() {
+        List<String> conflicts = new ArrayList<>();
+        Map<String, Placement> byName = new HashMap<>(this.placements.size() * 4 / 3 + 1);
+        Placement first = null;
+        for (Placement placement : this.placements) {
+            String name = placement.room.getName();
+            if (byName.putIfAbsent(name, placement) != null) {
+                conflicts.add(name + " is declared more than once.");
+                placement.duplicate = true;
+            } else if (placement.target == null) {
+                if (first == null) {
+                    first = placement;
+                } else {
+                    conflicts.add(name + " has no target, but " + first.room.getName() + " is already the first room.");
+                }
+            }
+        }
+        if (first == null && !this.placements.isEmpty()) {
+            conflicts.add("No room is declared without a target, so there is no first room.");
+        }
+        for (Placement placement : this.placements) {
+            if (placement.duplicate || placement.target == null) {
+                continue;
+            }
+            Placement target = byName.get(placement.target.getName());
+            if (target == null) {
+                conflicts.add(placement.room.getName() + " is connected to " + placement.target.getName() + ", which is not in the layout.");
+            } else if (placement.direction == null) {
+                conflicts.add(placement.room.getName() + " is connected to " + placement.target.getName() + " without a direction.");
+            } else {
+                target.children.add(placement);
+                placement.linked = true;
+            }
+        }
+        List<Placement> order = place(first, conflicts);
+        for (Placement placement : this.placements) {
+            if (placement.linked && !placement.reached) {
+                conflicts.add(placement.room.getName() + " cannot be reached from the first room.");
+            }
+        }
+        checkContents(byName, conflicts);
+        if (!conflicts.isEmpty()) {
+            throw new InvalidWorldLayout(conflicts);
+        }
+        applyContents(byName);
+        QuartlyLinkedList<Room> rooms = new QuartlyLinkedList<>(order.size());
+        for (Placement placement : order) {
+            if (placement.parent == null) {
+                rooms.add(placement.room, null, null);
+                placement.node = rooms.getRoot();
+            } else {
+                placement.node = rooms.addNextTo(placement.room, placement.parent.node, placement.direction);
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * Gives every room reached from the first one its cell, in breadth first order.
+     *
+     * @param first     The first room, or null if there is none.
+     * @param conflicts Collects the rooms whose cell is already taken.
+     * Returns The rooms reached, in the order they can be added.
+     */
+    private List<Placement> place(Placement first, List<String> conflicts) {
+        List<Placement> order = new ArrayList<>(this.placements.size());
+        if (first == null) {
+            return order;
+        }
+        LongIntMap cells = new LongIntMap();
+        ArrayDeque<Placement> queue = new ArrayDeque<>();
+        first.reached = true;
+        cells.put(CoordinateMap.pack(0, 0), 0);
+        order.add(first);
+        queue.add(first);
+        while (!queue.isEmpty()) {
+            Placement placement = queue.poll();
+            for (Placement child : placement.children) {
+                child.reached = true;
+                child.parent = placement;
+                child.x = placement.x + QuartlyLinkedList.deltaX(child.direction);
+                child.y = placement.y + QuartlyLinkedList.deltaY(child.direction);
+                long cell = CoordinateMap.pack(child.x, child.y);
+                int taken = cells.get(cell);
+                if (taken >= 0) {
+                    conflicts.add(child.room.getName() + " and " + order.get(taken).room.getName()
+                            + " both take the cell (" + child.x + ", " + child.y + ").");
+                } else {
+                    cells.put(cell, order.size());
+                    order.add(child);
+                }
+                // A room in a taken cell is still walked through, so the conflicts behind it are found too
+                queue.add(child);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Checks that the starting items, puzzles and keys fit the rooms of the layout.
+     */
+    private void checkContents(Map<String, Placement> byName, List<String> conflicts) {
+        Map<String, Integer> itemCounts = new HashMap<>();
+        for (int i = 0; i < this.items.size(); i++) {
+            Room room = this.itemRooms.get(i);
+            if (!byName.containsKey(room.getName())) {
+                conflicts.add(this.items.get(i).getName() + " is placed in " + room.getName() + ", which is not in the layout.");
+                continue;
+            }
+            int count = itemCounts.merge(room.getName(), 1, Integer::sum);
+            Item[] held = byName.get(room.getName()).room.getItems();
+            if (count + (held != null ? held.length : 0) == Room.MAX_ITEMS + 1) {
+                conflicts.add(room.getName() + " cannot hold more than " + Room.MAX_ITEMS + " items.");
+            }
+        }
+        Set<String> riddles = new HashSet<>();
+        for (Room room : this.riddleRooms) {
+            if (!byName.containsKey(room.getName())) {
+                conflicts.add("The puzzle of " + room.getName() + " is activated, but the room is not in the layout.");
+            }
+            riddles.add(room.getName());
+        }
+        for (int i = 0; i < this.keys.size(); i++) {
+            Room room = this.lockedRooms.get(i);
+            if (!byName.containsKey(room.getName())) {
+                conflicts.add(room.getName() + " is unlocked with " + this.keys.get(i).getName() + ", but the room is not in the layout.");
+            } else if (riddles.contains(room.getName())) {
+                conflicts.add(room.getName() + " starts unlocked, so its puzzle cannot be active.");
+            }
+        }
+    }
+
+    /**
+     * Puts the starting items, puzzles and keys into the rooms of the layout.
+     */
+    private void applyContents(Map<String, Placement> byName) {
+        for (int i = 0; i < this.items.size(); i++) {
+            byName.get(this.itemRooms.get(i).getName()).room.addItem(this.items.get(i));
+        }
+        for (Room room : this.riddleRooms) {
+            byName.get(room.getName()).room.setRiddle(true);
+        }
+        for (int i = 0; i < this.keys.size(); i++) {
+            byName.get(this.lockedRooms.get(i).getName()).room.unlockRoom(this.keys.get(i));
+        }
+    }
+
+    /**
+     * A room of the layout with the link it was declared with.
+     */
+    private static final class Placement {
+        private final Room room;
+        private final Room target;
+        private final Direction direction;
+        private final List<Placement> children; // Rooms declared next to this one
+        private boolean duplicate; // true if an earlier room has the same name
+        private boolean linked; // true if the room was declared next to a room of the layout
+        private boolean reached; // true once the walk from the first room got here
+        private Placement parent; // Placement this one is added next to
+        private int x;
+        private int y;
+        private QuartNode<Room> node;
+
+        Placement(Room room, Room target, Direction direction) {
+            this.room = room;
+            this.target = target;
+            this.direction = direction;
+            this.children = new ArrayList<>(1);
+        }
+    }
+}
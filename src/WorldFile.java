@@ -0,0 +1,352 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a whole game into a compact binary file and loads it back through a memory mapped buffer.
+ *
+ * Layout of version 1, all numbers big endian:
+ * <pre>
+ * header   int magic "QRTW", int version, long journal generation, int room count
+ * room     long id, string name, byte flags (riddle, key status, has key), [item key],
+ *          byte item count, item * count, int parent, then byte direction, or int x, int y if parent is -1
+ * player   byte present, [string name, int max items, byte has bag, [item bag], int room]
+ * item     byte kind (empty entry, key, relic, bag, large bag), [string name, int value],
+ *          for bags: int max items, int count, item * count
+ * string   int length, UTF-8 bytes
+ * </pre>
+ * Rooms are written in breadth first order from the first room, each with the earlier room it is placed next to
+ * and the direction it lies in from that room. A room with no such room, the first one or the first of a group
+ * that a removal cut off, gives its cell instead. The other links follow from the grid, since a room is linked to
+ * every room in a cell next to its own. Rooms keep their ids, so that the records of a journal find them again.
+ * The journal generation is the generation of the GameJournal whose records the file already holds, when the file
+ * is a checkpoint of one, and 0 otherwise.
+ */
+public final class WorldFile {
+    private static final int MAGIC = 0x51525457; // "QRTW"
+    private static final int VERSION = 1;
+
+    private static final byte RIDDLE = 1;
+    private static final byte KEY_STATUS = 2;
+    private static final byte HAS_KEY = 4;
+
+    private static final byte EMPTY = 0;
+    private static final byte KEY = 1;
+    private static final byte RELIC = 2;
+    private static final byte BAG = 3;
+    private static final byte LARGE_BAG = 4;
+
+    // Bytes of the smallest room record: id, empty name, flags, no items, parent and direction
+    private static final int MIN_ROOM_BYTES = Long.BYTES + Integer.BYTES + 1 + 1 + Integer.BYTES + 1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private WorldFile() {
+    }
+
+    /**
+     * Writes a game into a file, replacing the file if it exists.
+     *
+     * @param game The game to save.
+     * @param path The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void save(GameManager game, Path path) throws IOException {
+        save(game, path, 0);
+    }
+
+    /**
+     * Writes a game into a file, replacing the file if it exists, as the checkpoint of a journal.
+     *
+     * @param game              The game to save.
+     * @param path              The file to write.
+     * @param journalGeneration The generation of the journal whose records the game already holds.
+     * @throws IOException if the file cannot be written.
+     */
+    static void save(GameManager game, Path path, long journalGeneration) throws IOException {
+        List<QuartNode<Room>> order = new ArrayList<>();
+        Map<Room, Integer> indexes = new IdentityHashMap<>(); // by room, since a backend may hand out node views
+        List<Integer> parents = new ArrayList<>();
+        List<Direction> directions = new ArrayList<>();
+        QuartNode<Room> root = game.getRooms().getRoot();
+        List<QuartNode<Room>> anchors = new ArrayList<>();
+        if (root != null) {
+            anchors.add(root);
+        }
+        game.getRooms().stream().forEach(anchors::add);
+        for (QuartNode<Room> anchor : anchors) {
+            if (indexes.containsKey(anchor.getValue())) {
+                continue;
+            }
+            indexes.put(anchor.getValue(), order.size());
+            order.add(anchor);
+            parents.add(-1);
+            directions.add(null);
+            for (int i = order.size() - 1; i < order.size(); i++) {
+                QuartNode<Room> node = order.get(i);
+                for (Direction direction : DIRECTIONS) {
+                    QuartNode<Room> neighbor = node.getNeighbor(direction);
+                    if (neighbor != null && !indexes.containsKey(neighbor.getValue())) {
+                        indexes.put(neighbor.getValue(), order.size());
+                        order.add(neighbor);
+                        parents.add(i);
+                        directions.add(direction);
+                    }
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalGeneration);
+            out.writeInt(order.size());
+            for (int i = 0; i < order.size(); i++) {
+                writeRoom(out, order.get(i).getValue());
+                out.writeInt(parents.get(i));
+                if (parents.get(i) >= 0) {
+                    out.writeByte(directions.get(i).ordinal());
+                } else {
+                    out.writeInt(order.get(i).getX());
+                    out.writeInt(order.get(i).getY());
+                }
+            }
+            Player player = game.getCurrentPlayer();
+            out.writeBoolean(player != null);
+            if (player != null) {
+                writeString(out, player.getName());
+                out.writeInt(player.getMaxItems());
+                out.writeBoolean(player.getBag() != null);
+                if (player.getBag() != null) {
+                    writeItem(out, player.getBag());
+                }
+                QuartNode<Room> node = player.getCurrentRoom() != null ? game.getRooms().getNode(player.getCurrentRoom()) : null;
+                Integer index = node != null ? indexes.get(node.getValue()) : null;
+                out.writeInt(index != null ? index : -1);
+            }
+        }
+    }
+
+    /**
+     * Loads a game from a file, without printing anything.
+     *
+     * @param path The file to read.
+     * Returns The loaded game.
+     * @throws IOException if the file cannot be read.
+     * throws InvalidWorldFile if the file is damaged or of another version.
+     */
+    public static GameManager load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+                 | NegativeArraySizeException | ClassCastException | DirectionIsOccupied e) {
+            throw new InvalidWorldFile("The world file " + path + " is truncated or damaged.", e);
+        }
+    }
+
+    /**
+     * Reads the journal generation of a world file without loading the game.
+     *
+     * @param path The file to read.
+     * Returns The generation of the journal whose records the file holds, 0 if it is no checkpoint of a journal.
+     * @throws IOException if the file cannot be read.
+     * throws InvalidWorldFile if the file is no world file of this version.
+     */
+    static long readJournalGeneration(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + Long.BYTES);
+            int read;
+            do {
+                read = channel.read(header);
+            } while (read >= 0 && header.hasRemaining());
+            header.flip();
+            if (header.remaining() < 2 * Integer.BYTES || header.getInt() != MAGIC) {
+                throw new InvalidWorldFile("Not a world file.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new InvalidWorldFile("Unsupported world file version " + version + ".");
+            }
+            if (header.remaining() < Long.BYTES) {
+                throw new InvalidWorldFile("The world file " + path + " is truncated or damaged.");
+            }
+            return header.getLong();
+        }
+    }
+
+    /**
+     * Reads a game from a buffer holding a world file.
+     */
+    private static GameManager read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new InvalidWorldFile("Not a world file.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new InvalidWorldFile("Unsupported world file version " + version + ".");
+        }
+        buffer.getLong(); // journal generation, see readJournalGeneration
+        int roomCount = buffer.getInt();
+        if (roomCount < 0 || roomCount > buffer.remaining() / MIN_ROOM_BYTES) {
+            // Checked before the count sizes any array, so a damaged header cannot exhaust the heap
+            throw new InvalidWorldFile("The world file claims " + roomCount + " rooms in " + buffer.remaining() + " bytes.");
+        }
+        QuartlyLinkedList<Room> rooms = new QuartlyLinkedList<>(roomCount);
+        QuartNode<Room>[] nodes = QuartNode.newArray(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            Room room = readRoom(buffer);
+            int parent = buffer.getInt();
+            if (parent < 0) {
+                nodes[i] = rooms.addAt(room, buffer.getInt(), buffer.getInt());
+            } else if (parent < i) {
+                nodes[i] = rooms.addNextTo(room, nodes[parent], DIRECTIONS[buffer.get()]);
+            } else {
+                throw new InvalidWorldFile("Room " + room.getName() + " is placed next to a room not read yet.");
+            }
+        }
+        GameManager game = new GameManager(rooms);
+        if (buffer.get() != 0) {
+            Player player = new Player(readString(buffer), buffer.getInt());
+            player.setBag(buffer.get() != 0 ? (Bag) readItem(buffer) : null);
+            int index = buffer.getInt();
+            game.placePlayer(player, index >= 0 && index < roomCount ? nodes[index].getValue() : null);
+        }
+        return game;
+    }
+
+    static void writeRoom(DataOutputStream out, Room room) throws IOException {
+        out.writeLong(room.getId());
+        writeString(out, room.getName());
+        int flags = (room.getRiddle() ? RIDDLE : 0) | (room.getKeyStatus() ? KEY_STATUS : 0) | (room.getKey() != null ? HAS_KEY : 0);
+        out.writeByte(flags);
+        if (room.getKey() != null) {
+            writeItem(out, room.getKey());
+        }
+        writeItems(out, room.getItems(), false);
+    }
+
+    static Room readRoom(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        Room room = new Room(readString(buffer), id);
+        byte flags = buffer.get();
+        Key key = (flags & HAS_KEY) != 0 ? (Key) readItem(buffer) : null;
+        int itemCount = buffer.get();
+        for (int i = 0; i < itemCount; i++) {
+            room.addItem(readItem(buffer));
+        }
+        if ((flags & KEY_STATUS) != 0) {
+            room.unlockRoom(key);
+        }
+        if ((flags & RIDDLE) != 0) {
+            room.setRiddle(true);
+        }
+        return room;
+    }
+
+    static void writeItem(DataOutputStream out, Item item) throws IOException {
+        if (item instanceof LargeBag) {
+            out.writeByte(LARGE_BAG);
+        } else if (item instanceof Bag) {
+            out.writeByte(BAG);
+        } else if (item instanceof Key) {
+            out.writeByte(KEY);
+        } else if (item instanceof Relic) {
+            out.writeByte(RELIC);
+        } else {
+            throw new IllegalArgumentException("Cannot save items of type " + item.getClass().getName() + ".");
+        }
+        writeString(out, item.getName());
+        out.writeInt(item.value);
+        if (item instanceof Bag) {
+            Bag bag = (Bag) item;
+            out.writeInt(bag.maxItems);
+            writeItems(out, bag.items, true);
+        }
+    }
+
+    /**
+     * Writes the count and then the items of an array, including the empty entries a removal can leave behind,
+     * so that a loaded room or bag is as full as the saved one.
+     *
+     * @param wide true to write the count as an int, false as a byte
+     */
+    private static void writeItems(DataOutputStream out, Item[] items, boolean wide) throws IOException {
+        int count = items != null ? items.length : 0;
+        if (wide) {
+            out.writeInt(count);
+        } else {
+            out.writeByte(count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (items[i] == null) {
+                out.writeByte(EMPTY);
+            } else {
+                writeItem(out, items[i]);
+            }
+        }
+    }
+
+    static Item readItem(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        if (kind == EMPTY) {
+            return null;
+        }
+        String name = readString(buffer);
+        int value = buffer.getInt();
+        switch (kind) {
+            case KEY:
+                return new Key(name, value);
+            case RELIC:
+                return new Relic(name, value);
+            case BAG:
+            case LARGE_BAG:
+                int maxItems = buffer.getInt();
+                Bag bag = kind == BAG ? new Bag(name, value, maxItems) : new LargeBag(name, value, maxItems);
+                bag.maxItems = maxItems;
+                int count = buffer.getInt();
+                if (count > buffer.remaining()) {
+                    // Every entry takes at least a byte, so a damaged count cannot exhaust the heap
+                    throw new InvalidWorldFile("A bag of the world file claims " + count + " items in " + buffer.remaining() + " bytes.");
+                }
+                if (count > 0) {
+                    // Restored as they were saved, without the checks addItem makes on a live bag
+                    bag.items = new Item[count];
+                    for (int i = 0; i < count; i++) {
+                        bag.items[i] = readItem(buffer);
+                    }
+                }
+                return bag;
+            default:
+                throw new InvalidWorldFile("Unknown item kind " + kind + ".");
+        }
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new InvalidWorldFile("A string of the world file claims " + length + " bytes in " + buffer.remaining() + ".");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
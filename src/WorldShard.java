@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A rectangle of the grid of a ShardedWorld, together with the worker thread that owns it.
+ *
+ * The rooms of the rectangle live in a QuartlyLinkedList of their own, the fragment, at the same coordinates they
+ * had in the whole world, so exits between two rooms of the shard are ordinary links. An exit leading out of the
+ * rectangle has no link; the shard keeps the name of the room beyond it by the cell that room occupies instead,
+ * and the shard of that cell follows from the coordinates alone.
+ *
+ * Everything the shard holds, its fragment, its rooms and the players standing in them, is only ever touched by
+ * the worker, which takes the messages of its inbox one at a time: commands of players, players arriving through
+ * a boundary exit, and players joining. A player leaving through a boundary exit is handed to the other shard as
+ * a Handoff and forgotten here. A command reaching the shard before the player it is meant for is held until the
+ * player arrives, and one reaching it after the player left is sent after it.
+ */
+final class WorldShard {
+
+    /**
+     * A command of a player, run by the worker of the shard the player stands in.
+     */
+    interface Command {
+        void run(WorldShard shard, Player player);
+    }
+
+    private final ShardedWorld world;
+    private final int index;
+    private final QuartlyLinkedList<Room> fragment;
+    private final HashMap<Long, String> boundary; // rooms of other shards next to rooms of this one, by packed cell
+    private final HashMap<String, Player> players; // players standing in the shard, by name
+    private final HashMap<String, ArrayDeque<Held>> held; // commands waiting for their player to arrive
+    private final LinkedBlockingQueue<Runnable> inbox;
+    private final SessionConsole console;
+    private final Thread worker;
+    private boolean running; // only touched by the worker
+
+    /**
+     * Constructs a shard and starts its worker.
+     *
+     * @param world    The world the shard is part of.
+     * @param index    The index of the shard in the world.
+     * @param fragment The rooms of the shard, at their coordinates in the world.
+     * @param boundary The names of the rooms of other shards next to rooms of this one, by packed cell.
+     */
+    WorldShard(ShardedWorld world, int index, QuartlyLinkedList<Room> fragment, HashMap<Long, String> boundary) {
+        this.world = world;
+        this.index = index;
+        this.fragment = fragment;
+        this.boundary = boundary;
+        this.players = new HashMap<>();
+        this.held = new HashMap<>();
+        this.inbox = new LinkedBlockingQueue<>();
+        this.console = SessionConsole.install();
+        this.running = true;
+        this.worker = new Thread(this::work, "world-shard-" + index);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Returns the rooms of the shard. Only the worker may touch them while the shard runs.
+     */
+    QuartlyLinkedList<Room> getFragment() {
+        return this.fragment;
+    }
+
+    /**
+     * Queues a command of a player.
+     *
+     * @param name    The name of the player.
+     * @param command The command.
+     * @param done    Completed with what the game printed for the command.
+     */
+    void submit(String name, Command command, CompletableFuture<String> done) {
+        this.inbox.add(() -> execute(name, command, done));
+    }
+
+    /**
+     * Queues a player joining the game in a room of the shard.
+     *
+     * @param player The player, already entered in the directory of the world as standing in this shard.
+     * @param x      The x coordinate of the room.
+     * @param y      The y coordinate of the room.
+     * @param done   Completed with what the game printed for the player joining.
+     */
+    void admit(Player player, int x, int y, CompletableFuture<String> done) {
+        this.inbox.add(() -> {
+            StringBuilder output = new StringBuilder(128);
+            this.console.capture(output);
+            try {
+                place(player, x, y, false);
+            } catch (RuntimeException e) {
+                this.world.removeOwner(player.getName());
+                done.completeExceptionally(e);
+                failHeld(player.getName(), e);
+                return;
+            } finally {
+                this.console.capture(null);
+            }
+            done.complete(output.toString());
+            runHeld(player.getName());
+        });
+    }
+
+    /**
+     * Queues a player arriving through a boundary exit. Called by the transport.
+     *
+     * @param handoff The handoff.
+     */
+    void receive(Handoff handoff) {
+        this.inbox.add(() -> {
+            String name = handoff.getPlayer().getName();
+            try {
+                place(handoff.getPlayer(), handoff.getX(), handoff.getY(), true);
+            } catch (RuntimeException e) {
+                this.world.removeOwner(name);
+                failHeld(name, e);
+                this.console.getConsole().println("Shard " + this.index + " lost " + name + " on the way in: " + e);
+                return;
+            } finally {
+                this.world.handoffDone();
+            }
+            runHeld(name);
+        });
+    }
+
+    /**
+     * Queues giving up a handoff that arrived but could not be read. Called by the transport.
+     * The handoff still counts as over, and if the name of its player can be read, the commands held for the
+     * player fail and the player leaves the directory of the world.
+     *
+     * @param frame   The bytes of the handoff.
+     * @param failure What went wrong reading it.
+     */
+    void lose(ByteBuffer frame, RuntimeException failure) {
+        this.inbox.add(() -> {
+            try {
+                String name = readName(frame);
+                if (name != null && Integer.valueOf(this.index).equals(this.world.ownerOf(name))
+                        && !this.players.containsKey(name)) {
+                    this.world.removeOwner(name);
+                    failHeld(name, failure);
+                }
+                this.console.getConsole().println("Shard " + this.index + " dropped a handoff it could not read: " + failure);
+            } finally {
+                this.world.handoffDone();
+            }
+        });
+    }
+
+    private static String readName(ByteBuffer frame) {
+        try {
+            return WorldFile.readString(frame);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Queues sending the commands held for a player on to wherever the directory of the world now has it,
+     * for when a handoff of the player to this shard failed.
+     *
+     * @param name The name of the player.
+     */
+    void release(String name) {
+        this.inbox.add(() -> runHeld(name));
+    }
+
+    /**
+     * Stops the worker once it ran the messages queued so far, and waits for it.
+     */
+    void close() {
+        this.inbox.add(() -> this.running = false);
+        try {
+            this.worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        SessionConsole.release(this.console);
+    }
+
+    private void work() {
+        while (this.running) {
+            try {
+                this.inbox.take().run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                this.console.getConsole().println("Shard " + this.index + " dropped a message: " + e);
+            }
+        }
+    }
+
+    /**
+     * Runs a command if its player stands in the shard, and otherwise sends it after the player or holds it.
+     */
+    private void execute(String name, Command command, CompletableFuture<String> done) {
+        Player player = this.players.get(name);
+        if (player == null) {
+            Integer owner = this.world.ownerOf(name);
+            if (owner == null) {
+                done.complete(name + " does not exist.\n");
+            } else if (owner != this.index) {
+                this.world.getShard(owner).submit(name, command, done);
+            } else {
+                // The player is on the way here
+                this.held.computeIfAbsent(name, key -> new ArrayDeque<>()).add(new Held(command, done));
+            }
+            return;
+        }
+        StringBuilder output = new StringBuilder(128);
+        this.console.capture(output);
+        try {
+            command.run(this, player);
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+            return;
+        } finally {
+            this.console.capture(null);
+        }
+        done.complete(output.toString());
+    }
+
+    private void runHeld(String name) {
+        ArrayDeque<Held> commands = this.held.remove(name);
+        if (commands != null) {
+            for (Held command : commands) {
+                execute(name, command.command, command.done);
+            }
+        }
+    }
+
+    /**
+     * Fails the commands held for a player that will not arrive.
+     */
+    private void failHeld(String name, RuntimeException failure) {
+        ArrayDeque<Held> commands = this.held.remove(name);
+        if (commands != null) {
+            for (Held command : commands) {
+                command.done.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Stands a player in the room of the shard at the given cell.
+     *
+     * @param arriving true if the player walked in from another shard, false if it starts here.
+     */
+    private void place(Player player, int x, int y, boolean arriving) {
+        QuartNode<Room> node = this.fragment.getNodeAt(x, y);
+        if (node == null) {
+            throw new RoomDoesNotExist();
+        }
+        this.players.put(player.getName(), player);
+        if (arriving) {
+            player.movePlayer(node.getValue());
+        } else {
+            System.out.println(player.getName() + " was added to the game.");
+            player.startPlayer(node.getValue());
+        }
+        player.setCurrentNode(node);
+    }
+
+    /**
+     * Moves a player, handing it to the shard beyond if the exit leads out of this one.
+     */
+    void move(Player player, Direction direction) {
+        QuartNode<Room> node = player.getCurrentNode();
+        Room room = player.getCurrentRoom();
+        if (node == null || node.getNeighbor(direction) != null) {
+            player.movePlayer(this.fragment, direction);
+            return;
+        }
+        int x = node.getX() + QuartlyLinkedList.deltaX(direction);
+        int y = node.getY() + QuartlyLinkedList.deltaY(direction);
+        String beyond = this.boundary.get(CoordinateMap.pack(x, y));
+        if (beyond == null || room.getRiddle()) {
+            // No exit at all, or one the riddle keeps shut: the player tells why it stays
+            player.movePlayer(this.fragment, direction);
+            return;
+        }
+        String name = player.getName();
+        int target = this.world.shardOf(x, y);
+        this.players.remove(name);
+        this.world.setOwner(name, target);
+        this.world.handoffSent();
+        try {
+            this.world.getTransport().send(target, new Handoff(player, x, y));
+        } catch (IOException e) {
+            this.world.handoffDone();
+            this.world.setOwner(name, this.index);
+            this.players.put(name, player);
+            this.world.getShard(target).release(name);
+            System.out.println(name + " could not move via the " + Room.getDirectionString(direction) + " exit.");
+            return;
+        }
+        // The player belongs to the other shard now and is not touched here again
+        System.out.println(name + " moved from " + room.getName() + " to " + beyond + " via the " + Room.getDirectionString(direction) + " exit.");
+    }
+
+    void remove(Player player) {
+        this.players.remove(player.getName());
+        this.world.removeOwner(player.getName());
+        player.resetPlayer();
+        System.out.println(player.getName() + " was removed from the game.");
+    }
+
+    void pickUpItem(Player player, String name) {
+        Item lying = find(player.getCurrentRoom().getItems(), name);
+        if (lying == null) {
+            System.out.println(name + " is not in " + player.getCurrentRoom().getName() + ".");
+        } else {
+            player.pickUpItem(lying);
+        }
+    }
+
+    void dropItem(Player player, String name) {
+        Item carried = find(player.getBag() != null ? player.getBag().items : null, name);
+        if (carried == null) {
+            System.out.println(name + " is not in " + player.getName() + "'s inventory.");
+        } else {
+            player.dropItem(carried);
+        }
+    }
+
+    void useItem(Player player, String name) {
+        Item item = find(player.getBag() != null ? player.getBag().items : null, name);
+        if (item == null) {
+            item = find(player.getCurrentRoom().getItems(), name);
+        }
+        if (item == null) {
+            System.out.println(name + " is not near " + player.getName() + ".");
+        } else {
+            item.useItem(player);
+        }
+    }
+
+    /**
+     * Describes the room of a player, with the exits leading out of the shard among the others.
+     */
+    void look(Player player) {
+        Room room = player.getCurrentRoom();
+        StringBuilder text = new StringBuilder(player.getName()).append(" is in ").append(room.getName()).append('.');
+        Item[] items = room.getItems();
+        if (items != null) {
+            text.append("\nItems:");
+            for (Item item : items) {
+                text.append(' ').append(item.getName());
+            }
+        }
+        QuartNode<Room> node = player.getCurrentNode();
+        text.append("\nExits:");
+        for (Direction direction : Direction.values()) {
+            if (node.getNeighbor(direction) != null || this.boundary.containsKey(CoordinateMap.pack(
+                    node.getX() + QuartlyLinkedList.deltaX(direction), node.getY() + QuartlyLinkedList.deltaY(direction)))) {
+                text.append(' ').append(Room.getDirectionString(direction));
+            }
+        }
+        System.out.println(text);
+    }
+
+    private static Item find(Item[] items, String name) {
+        if (items != null) {
+            for (Item item : items) {
+                if (item != null && item.getName().equalsIgnoreCase(name)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A command held until its player arrives, with the future its result goes to.
+     */
+    private static final class Held {
+        private final Command command;
+        private final CompletableFuture<String> done;
+
+        Held(Command command, CompletableFuture<String> done) {
+            this.command = command;
+            this.done = done;
+        }
+    }
+}
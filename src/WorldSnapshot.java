@@ -0,0 +1,94 @@
+/**
+ * An immutable version of a whole game: every room with its place in the map, and the player.
+ * The rooms live in a persistent map that the GameManager brings up to date with the rooms changed since the last
+ * snapshot, so a snapshot costs time in the number of changes, and successive snapshots share every room that did
+ * not change in between.
+ */
+public final class WorldSnapshot {
+    private final PersistentLongMap<RoomState> rooms;
+    private final long rootId;
+    private final String playerName; // null if there was no player
+    private final int playerMaxItems;
+    private final Bag playerBag;
+    private final long playerRoomId; // 0 if the player had not started
+    private final long playerGeneration; // 0 if there was no player
+
+    /**
+     * Constructs a snapshot.
+     *
+     * @param rooms  The rooms by id.
+     * @param rootId The id of the first room of the map, 0 if the map is empty.
+     * @param player The player, or null if there is none. Its bag is copied.
+     */
+    WorldSnapshot(PersistentLongMap<RoomState> rooms, long rootId, Player player) {
+        this.rooms = rooms;
+        this.rootId = rootId;
+        if (player != null) {
+            this.playerName = player.getName();
+            this.playerMaxItems = player.getMaxItems();
+            this.playerBag = player.getBag() != null ? player.getBag().clone() : null;
+            this.playerRoomId = player.getCurrentRoom() != null ? player.getCurrentRoom().getId() : 0;
+            this.playerGeneration = player.getGeneration();
+        } else {
+            this.playerName = null;
+            this.playerMaxItems = 0;
+            this.playerBag = null;
+            this.playerRoomId = 0;
+            this.playerGeneration = 0;
+        }
+    }
+
+    /**
+     * Retrieves the state of a room.
+     *
+     * @param id The id of the room.
+     * @return The state of the room, or null if the room was not in the game.
+     */
+    public RoomState getRoom(long id) {
+        return this.rooms.get(id);
+    }
+
+    /**
+     * Retrieves every room of the snapshot.
+     *
+     * @return The rooms by id.
+     */
+    public PersistentLongMap<RoomState> getRooms() {
+        return this.rooms;
+    }
+
+    public int getRoomCount() {
+        return this.rooms.size();
+    }
+
+    public long getRootId() {
+        return this.rootId;
+    }
+
+    /**
+     * Builds a new player like the one of the snapshot, carrying a copy of its bag.
+     *
+     * @return The player, or null if the snapshot has none.
+     */
+    Player toPlayer() {
+        if (this.playerName == null) {
+            return null;
+        }
+        Player player = new Player(this.playerName, this.playerMaxItems);
+        player.setBag(this.playerBag != null ? this.playerBag.clone() : null);
+        return player;
+    }
+
+    public long getPlayerRoomId() {
+        return this.playerRoomId;
+    }
+
+    /**
+     * Retrieves the generation the player had when the snapshot was taken.
+     *
+     * @return The generation, or 0 if the snapshot has no player.
+     */
+    public long getPlayerGeneration() {
+        return this.playerGeneration;
+    }
+}